@@ -28,9 +28,13 @@ import com.codelanx.codelanxlib.listener.ListenerManager;
 import com.codelanx.codelanxlib.logging.PluginDebugOpts;
 import com.codelanx.codelanxlib.serialize.SerializationFactory;
 import com.codelanx.codelanxlib.util.ReflectBukkit;
+import com.codelanx.codelanxlib.util.auth.UUIDCache;
+import com.codelanx.codelanxlib.util.auth.PlayerIndexListener;
+import com.codelanx.codelanxlib.util.auth.UUIDCacheListener;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.mcstats.Metrics;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -60,6 +64,14 @@ public class CodelanxLib extends JavaPlugin {
         Logging.setNab(() -> ReflectBukkit.getCallingPlugin(2).getLogger());
         Debugger.DebugUtil.setOps(PluginDebugOpts::getPluginOpts);
         PluginDebugOpts.hookBukkit();
+        try {
+            this.getDataFolder().mkdirs();
+            UUIDCache.open(new File(this.getDataFolder(), "uuids.cache"));
+        } catch (IOException ex) {
+            Debugger.error(ex, "Error opening UUID cache, caching in memory only");
+        }
+        new UUIDCacheListener(this).register();
+        new PlayerIndexListener(this).register();
         if (Reflections.findPluginJarfile("Vault") != null) {
             new VaultProxyListener(this).register();
         }
@@ -84,6 +96,7 @@ public class CodelanxLib extends JavaPlugin {
         ListenerManager.release();
         Scheduler.cancelAllTasks();
         Scheduler.getService().shutdown();
+        UUIDCache.close();
     }
 
     /**
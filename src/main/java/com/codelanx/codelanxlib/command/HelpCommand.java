@@ -22,6 +22,7 @@ package com.codelanx.codelanxlib.command;
 import com.codelanx.commons.util.cache.Cache;
 import com.codelanx.codelanxlib.internal.InternalLang;
 import com.codelanx.codelanxlib.util.Paginator;
+import com.codelanx.codelanxlib.util.UUIDMap;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
@@ -50,7 +51,7 @@ import java.util.stream.IntStream;
 public final class HelpCommand<E extends Plugin> extends CommandNode<E> {
 
     /** Stores a {@link Paginator} cache per player */
-    private final Map<UUID, Cache<Paginator>> pages = new HashMap<>(); //TODO: Use IdentityMap
+    private final Map<UUID, Cache<Paginator>> pages = new UUIDMap<>();
     /** Internal {@link Paginator} cache per {@link CommandSender}, used to pre-render and output pages */
     private final Map<Class<? extends CommandSender>, Cache<Paginator>> oddSenders = new HashMap<>();
     /** The number of commands to show per page */
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped per-account locks shared by every {@link CEconomy} instance. All
+ * plugins talk to the same underlying Vault economy, so the stripes are
+ * static rather than held per {@link CEconomy}. Pairs of accounts are always
+ * locked in stripe order, which prevents two opposing transfers from
+ * deadlocking one another
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class AccountLocks {
+
+    /** The number of stripes, must be a power of two */
+    private static final int STRIPES = 256;
+    /** The stripe locks, indexed by a spread of the account {@link UUID} */
+    private static final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            AccountLocks.locks[i] = new ReentrantLock();
+        }
+    }
+
+    private AccountLocks() {
+    }
+
+    /**
+     * Acquires the stripe lock for a single account
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the account
+     */
+    static void lock(UUID id) {
+        AccountLocks.locks[AccountLocks.stripe(id)].lock();
+    }
+
+    /**
+     * Releases the stripe lock for a single account
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the account
+     */
+    static void unlock(UUID id) {
+        AccountLocks.locks[AccountLocks.stripe(id)].unlock();
+    }
+
+    /**
+     * Acquires the stripe locks for two accounts, lowest stripe first. If both
+     * accounts share a stripe it is only locked once
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param first The {@link UUID} of the first account
+     * @param second The {@link UUID} of the second account
+     */
+    static void lock(UUID first, UUID second) {
+        int a = AccountLocks.stripe(first);
+        int b = AccountLocks.stripe(second);
+        AccountLocks.locks[Math.min(a, b)].lock();
+        if (a != b) {
+            AccountLocks.locks[Math.max(a, b)].lock();
+        }
+    }
+
+    /**
+     * Releases the stripe locks acquired by
+     * {@link AccountLocks#lock(UUID, UUID)}, in reverse order
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param first The {@link UUID} of the first account
+     * @param second The {@link UUID} of the second account
+     */
+    static void unlock(UUID first, UUID second) {
+        int a = AccountLocks.stripe(first);
+        int b = AccountLocks.stripe(second);
+        if (a != b) {
+            AccountLocks.locks[Math.max(a, b)].unlock();
+        }
+        AccountLocks.locks[Math.min(a, b)].unlock();
+    }
+
+    /**
+     * Returns the stripe index for an account
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the account
+     * @return The index of the relevant lock
+     */
+    private static int stripe(UUID id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+}
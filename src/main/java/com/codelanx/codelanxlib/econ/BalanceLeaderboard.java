@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import com.codelanx.codelanxlib.util.UUIDMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An incrementally updated ranking of player balances. Register it to a
+ * {@link CEconomy} with {@link CEconomy#addObserver(EconomyObserver)} and it
+ * is kept current from every {@link EconomyChangePacket}, without rescanning
+ * all accounts. Balances are held in an order-statistic treap, so both the
+ * rank of a player and a page of the leaderboard are found in logarithmic
+ * time. The index can be saved to disk to avoid a full rebuild on restart
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class BalanceLeaderboard implements EconomyObserver {
+
+    private static final int SNAPSHOT_MAGIC = 0x434C4C42; //CLLB
+    private final UUIDMap<Node> nodes = new UUIDMap<>();
+    private Node root;
+    private int seed = 0x2545F491;
+
+    /**
+     * Updates the balance of the player in the packet
+     * <br><br> {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param o {@inheritDoc}
+     * @param arg {@inheritDoc}
+     */
+    @Override
+    public void update(CEconomy o, EconomyChangePacket arg) {
+        this.update(arg.getPlayer().getUniqueId(), arg.getAmount());
+    }
+
+    /**
+     * Updates the balances of every player in the batch under a single lock
+     * <br><br> {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param o {@inheritDoc}
+     * @param batch {@inheritDoc}
+     */
+    @Override
+    public synchronized void update(CEconomy o, List<EconomyChangePacket> batch) {
+        batch.forEach(packet -> this.update(packet.getPlayer().getUniqueId(), packet.getAmount()));
+    }
+
+    /**
+     * Sets the balance of a player, such as when first populating the index
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the player
+     * @param balance The current balance of the player
+     */
+    public synchronized void update(UUID id, double balance) {
+        Node old = this.nodes.get(id);
+        if (old != null) {
+            if (old.balance == balance) {
+                return;
+            }
+            this.root = this.remove(this.root, old);
+        }
+        Node n = new Node(id.getMostSignificantBits(), id.getLeastSignificantBits(), balance, this.nextPriority());
+        this.nodes.put(id, n);
+        this.root = this.insert(this.root, n);
+    }
+
+    /**
+     * Removes a player from the index
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the player
+     * @return {@code true} if the player was in the index
+     */
+    public synchronized boolean remove(UUID id) {
+        Node old = this.nodes.remove(id);
+        if (old == null) {
+            return false;
+        }
+        this.root = this.remove(this.root, old);
+        return true;
+    }
+
+    /**
+     * Returns the position of a player on the leaderboard, where the highest
+     * balance is ranked 1
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the player
+     * @return The rank of the player, or -1 if the player is not indexed
+     */
+    public synchronized int getRank(UUID id) {
+        Node target = this.nodes.get(id);
+        if (target == null) {
+            return -1;
+        }
+        int rank = 1;
+        Node n = this.root;
+        while (n != null) {
+            int cmp = BalanceLeaderboard.compare(target, n);
+            if (cmp < 0) {
+                n = n.left;
+            } else {
+                rank += BalanceLeaderboard.size(n.left);
+                if (cmp == 0) {
+                    return rank;
+                }
+                rank++;
+                n = n.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a page of the leaderboard
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param offset The number of top entries to skip
+     * @param count The maximum number of entries to return
+     * @return A {@link Map} of player {@link UUID UUIDs} to balances, in
+     *         ranked order
+     */
+    public synchronized Map<UUID, Double> getPage(int offset, int count) {
+        Map<UUID, Double> back = new LinkedHashMap<>();
+        int start = Math.max(offset, 0);
+        if (start >= BalanceLeaderboard.size(this.root)) {
+            return back;
+        }
+        Deque<Node> path = this.select(start);
+        while (back.size() < count && !path.isEmpty()) {
+            Node n = path.pop();
+            back.put(new UUID(n.msb, n.lsb), n.balance);
+            for (Node c = n.right; c != null; c = c.left) {
+                path.push(c);
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Returns the top entries of the leaderboard
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param count The maximum number of entries to return
+     * @return A {@link Map} of player {@link UUID UUIDs} to balances, in
+     *         ranked order
+     */
+    public Map<UUID, Double> getTop(int count) {
+        return this.getPage(0, count);
+    }
+
+    /**
+     * Returns the number of players in the index
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of indexed players
+     */
+    public synchronized int size() {
+        return BalanceLeaderboard.size(this.root);
+    }
+
+    /**
+     * Writes the index to a file as a count followed by fixed-size
+     * {@code (uuid, balance)} entries. The index is written to a temporary
+     * file first, and then moved over the target
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The file to write to
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(this.nodes.size());
+            for (Node n : this.nodes.values()) {
+                out.writeLong(n.msb);
+                out.writeLong(n.lsb);
+                out.writeDouble(n.balance);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an index previously written by {@link #save(File)}, adding its
+     * entries to this index
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The file to read from
+     * @throws IOException If the file could not be read or is invalid
+     */
+    public synchronized void load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a valid leaderboard file: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long msb = in.readLong();
+                long lsb = in.readLong();
+                this.update(new UUID(msb, lsb), in.readDouble());
+            }
+        }
+    }
+
+    /**
+     * Finds the node at a zero-based position in the ranking, and returns it
+     * atop a stack of every ancestor ranked after it. Popping the stack and
+     * pushing the left spine of each popped node's right subtree walks the
+     * rest of the ranking in order
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param index The position of the node, less than the index size
+     * @return The in-order walk starting at the relevant {@link Node}
+     */
+    private Deque<Node> select(int index) {
+        Deque<Node> path = new ArrayDeque<>();
+        Node n = this.root;
+        while (n != null) {
+            int left = BalanceLeaderboard.size(n.left);
+            if (index < left) {
+                path.push(n);
+                n = n.left;
+            } else if (index == left) {
+                path.push(n);
+                break;
+            } else {
+                index -= left + 1;
+                n = n.right;
+            }
+        }
+        return path;
+    }
+
+    private Node insert(Node at, Node n) {
+        if (at == null) {
+            return n;
+        }
+        if (BalanceLeaderboard.compare(n, at) < 0) {
+            at.left = this.insert(at.left, n);
+            if (at.left.priority > at.priority) {
+                at = BalanceLeaderboard.rotateRight(at);
+            }
+        } else {
+            at.right = this.insert(at.right, n);
+            if (at.right.priority > at.priority) {
+                at = BalanceLeaderboard.rotateLeft(at);
+            }
+        }
+        at.resize();
+        return at;
+    }
+
+    private Node remove(Node at, Node n) {
+        if (at == null) {
+            return null;
+        }
+        if (at == n) {
+            return BalanceLeaderboard.merge(at.left, at.right);
+        }
+        if (BalanceLeaderboard.compare(n, at) < 0) {
+            at.left = this.remove(at.left, n);
+        } else {
+            at.right = this.remove(at.right, n);
+        }
+        at.resize();
+        return at;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = BalanceLeaderboard.merge(left.right, right);
+            left.resize();
+            return left;
+        }
+        right.left = BalanceLeaderboard.merge(left, right.left);
+        right.resize();
+        return right;
+    }
+
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        n.resize();
+        l.resize();
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        n.resize();
+        r.resize();
+        return r;
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    /**
+     * Orders nodes by descending balance, breaking ties by {@link UUID}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param a The first {@link Node}
+     * @param b The second {@link Node}
+     * @return A negative number if {@code a} ranks above {@code b}
+     */
+    private static int compare(Node a, Node b) {
+        int back = Double.compare(b.balance, a.balance);
+        if (back == 0) {
+            back = Long.compare(a.msb, b.msb);
+            if (back == 0) {
+                back = Long.compare(a.lsb, b.lsb);
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Returns the next treap priority from a xorshift sequence
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return A pseudo-random priority
+     */
+    private int nextPriority() {
+        int x = this.seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        return this.seed = x;
+    }
+
+    private static final class Node {
+
+        private final long msb;
+        private final long lsb;
+        private final double balance;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(long msb, long lsb, double balance, int priority) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.balance = balance;
+            this.priority = priority;
+        }
+
+        private void resize() {
+            this.size = 1 + BalanceLeaderboard.size(this.left) + BalanceLeaderboard.size(this.right);
+        }
+
+    }
+
+}
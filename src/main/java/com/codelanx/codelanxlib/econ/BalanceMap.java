@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import java.util.UUID;
+
+/**
+ * A concurrent map of account {@link UUID UUIDs} to fixed-point balances. Keys
+ * are stored as their two {@code long} halves in open-addressed arrays, split
+ * across independently locked segments, so no boxed keys, values or entry
+ * objects are created per account. Accounts are never removed, and balances
+ * never drop below zero
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class BalanceMap {
+
+    /** The number of segments, must be a power of two */
+    private static final int SEGMENTS = 64;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Creates an empty map
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    BalanceMap() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns whether an account exists
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @return {@code true} if the account exists
+     */
+    boolean contains(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Segment s = this.segment(msb, lsb);
+        synchronized (s) {
+            return s.find(msb, lsb) >= 0;
+        }
+    }
+
+    /**
+     * Returns the balance of an account
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @return The balance, or 0 if the account does not exist
+     */
+    long get(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Segment s = this.segment(msb, lsb);
+        synchronized (s) {
+            int slot = s.find(msb, lsb);
+            return slot < 0 ? 0 : s.values[slot];
+        }
+    }
+
+    /**
+     * Creates an account if it does not exist already
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @return {@code true} if the account was created
+     */
+    boolean create(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Segment s = this.segment(msb, lsb);
+        synchronized (s) {
+            if (s.find(msb, lsb) >= 0) {
+                return false;
+            }
+            s.insert(msb, lsb, 0);
+            return true;
+        }
+    }
+
+    /**
+     * Adds to the balance of an account, creating it if needed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @param amount The non-negative amount to add
+     * @return The new balance
+     * @throws ArithmeticException If the balance would overflow, in which
+     *                             case it is left unchanged
+     */
+    long deposit(UUID id, long amount) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Segment s = this.segment(msb, lsb);
+        synchronized (s) {
+            int slot = s.find(msb, lsb);
+            if (slot < 0) {
+                s.insert(msb, lsb, amount);
+                return amount;
+            }
+            return s.values[slot] = Math.addExact(s.values[slot], amount);
+        }
+    }
+
+    /**
+     * Takes from the balance of an account if it holds enough
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @param amount The non-negative amount to take
+     * @return The new balance, or -1 if the balance was insufficient
+     */
+    long withdraw(UUID id, long amount) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        Segment s = this.segment(msb, lsb);
+        synchronized (s) {
+            int slot = s.find(msb, lsb);
+            long current = slot < 0 ? 0 : s.values[slot];
+            if (current < amount) {
+                return -1;
+            }
+            if (slot < 0) {
+                s.insert(msb, lsb, 0);
+                return 0;
+            }
+            return s.values[slot] -= amount;
+        }
+    }
+
+    /**
+     * Sets the balance of an account, creating it if needed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the account {@link UUID}
+     * @param lsb The least significant bits of the account {@link UUID}
+     * @param balance The new balance
+     */
+    void set(long msb, long lsb, long balance) {
+        Segment s = this.segment(msb, lsb);
+        synchronized (s) {
+            int slot = s.find(msb, lsb);
+            if (slot < 0) {
+                s.insert(msb, lsb, balance);
+            } else {
+                s.values[slot] = balance;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of accounts
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of accounts
+     */
+    int size() {
+        int back = 0;
+        for (Segment s : this.segments) {
+            synchronized (s) {
+                back += s.size;
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Visits every account. Each segment is locked while it is visited, so
+     * the visitor sees a consistent view of one segment at a time
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param visitor The {@link Visitor} to pass accounts to
+     */
+    void forEach(Visitor visitor) {
+        for (Segment s : this.segments) {
+            synchronized (s) {
+                for (int i = 0; i < s.used.length; i++) {
+                    if (s.used[i]) {
+                        visitor.visit(s.msbs[i], s.lsbs[i], s.values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the segment responsible for a key
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return The relevant {@link Segment}
+     */
+    private Segment segment(long msb, long lsb) {
+        return this.segments[BalanceMap.hash(msb, lsb) >>> 26];
+    }
+
+    /**
+     * Mixes the two halves of a key into a well distributed hash
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the key
+     * @param lsb The least significant bits of the key
+     * @return The hash of the key
+     */
+    static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Receives accounts from {@link BalanceMap#forEach(Visitor)}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @FunctionalInterface
+    static interface Visitor {
+
+        /**
+         * Called for each account
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param msb The most significant bits of the account {@link UUID}
+         * @param lsb The least significant bits of the account {@link UUID}
+         * @param balance The balance of the account
+         */
+        void visit(long msb, long lsb, long balance);
+
+    }
+
+    /**
+     * A linearly probed table guarded by its own monitor
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static final class Segment {
+
+        private long[] msbs = new long[16];
+        private long[] lsbs = new long[16];
+        private long[] values = new long[16];
+        private boolean[] used = new boolean[16];
+        private int size;
+
+        private int find(long msb, long lsb) {
+            int mask = this.used.length - 1;
+            for (int i = BalanceMap.hash(msb, lsb) & mask; this.used[i]; i = (i + 1) & mask) {
+                if (this.msbs[i] == msb && this.lsbs[i] == lsb) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long msb, long lsb, long value) {
+            if ((this.size + 1) * 2 > this.used.length) {
+                this.resize();
+            }
+            this.place(msb, lsb, value);
+            this.size++;
+        }
+
+        private void place(long msb, long lsb, long value) {
+            int mask = this.used.length - 1;
+            int i = BalanceMap.hash(msb, lsb) & mask;
+            while (this.used[i]) {
+                i = (i + 1) & mask;
+            }
+            this.msbs[i] = msb;
+            this.lsbs[i] = lsb;
+            this.values[i] = value;
+            this.used[i] = true;
+        }
+
+        private void resize() {
+            long[] oldMsbs = this.msbs;
+            long[] oldLsbs = this.lsbs;
+            long[] oldValues = this.values;
+            boolean[] oldUsed = this.used;
+            int cap = oldUsed.length << 1;
+            this.msbs = new long[cap];
+            this.lsbs = new long[cap];
+            this.values = new long[cap];
+            this.used = new boolean[cap];
+            for (int i = 0; i < oldUsed.length; i++) {
+                if (oldUsed[i]) {
+                    this.place(oldMsbs[i], oldLsbs[i], oldValues[i]);
+                }
+            }
+        }
+
+    }
+
+}
@@ -22,8 +22,10 @@ package com.codelanx.codelanxlib.econ;
 import com.codelanx.codelanxlib.config.Lang;
 import com.codelanx.commons.config.ConfigFile;
 import com.codelanx.commons.config.LangFile;
+import com.codelanx.commons.logging.Debugger;
 import com.codelanx.commons.util.exception.Exceptions;
 import com.codelanx.codelanxlib.internal.InternalLang;
+import com.codelanx.codelanxlib.util.TimingWheel;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
@@ -31,10 +33,18 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.RegisteredServiceProvider;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 /**
  * Represents an observable façade class for Vault's {@link Economy} object
@@ -47,10 +57,12 @@ public class CEconomy extends Observable {
 
     /** The {@link LangFile} format to use for output */
     protected final Lang format;
+    /** The name of the {@link Plugin} that instantiated this class */
+    private final String plugin;
     /** The underlying {@link Economy} object, usually a proxy */
     private Economy econ;
     /** Holds {@link EconomyObserver} objects for java-8 style observations */
-    private Set<EconomyObserver> observers = new HashSet<>();
+    private final Set<EconomyObserver> observers = new CopyOnWriteArraySet<>();
 
     /**
      * Sets the format string for this object to use for output
@@ -62,6 +74,22 @@ public class CEconomy extends Observable {
      */
     public CEconomy(Plugin plugin) {
         this.format = Lang.getFormat(plugin);
+        this.plugin = plugin.getName();
+    }
+
+    /**
+     * Uses the passed {@link Economy} directly instead of retrieving one from
+     * Bukkit's services manager, such as a {@link LocalEconomy} in tests
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param plugin The {@link Plugin} that instantiated this class
+     * @param econ The {@link Economy} to use
+     */
+    public CEconomy(Plugin plugin, Economy econ) {
+        this(plugin);
+        this.econ = econ;
     }
 
     /**
@@ -97,17 +125,49 @@ public class CEconomy extends Observable {
      *         a {@link ChargeStatus} of {@code true} with a returned cost of 0
      */
     public ChargeStatus canCharge(OfflinePlayer p, double cost) {
+        long status = this.checkCharge(p, cost);
+        if (status == ChargeStatus.ENCODED_DISABLED) {
+            return ChargeStatus.DISABLED;
+        }
+        if (status == ChargeStatus.ENCODED_INVALID) {
+            return ChargeStatus.INVALID;
+        }
+        return new ChargeStatus(ChargeStatus.decodeStatus(status), ChargeStatus.decodeAmount(status));
+    }
+
+    /**
+     * Returns whether or not a specific {@link OfflinePlayer} can be charged an
+     * amount, encoded in a primitive {@code long} rather than a
+     * {@link ChargeStatus} object so that frequent checks create no garbage.
+     * The result is read with {@link ChargeStatus#decodeStatus(long)} and
+     * {@link ChargeStatus#decodeAmount(long)}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param p The {@link OfflinePlayer} to check if they can be charged
+     * @param cost The amount to charge
+     * @return The encoded status and total cost. If
+     *         {@link CEconomy#isEnabled()} returns {@code false}, this will be
+     *         {@link ChargeStatus#ENCODED_DISABLED}
+     */
+    public long checkCharge(OfflinePlayer p, double cost) {
         if (!this.isEnabled()) {
-            return new ChargeStatus(true, 0);
+            return ChargeStatus.ENCODED_DISABLED;
         }
-        cost *= this.bonus();
         if (cost < 0) {
             if (p.isOnline()) {
                 Lang.sendMessage(p.getPlayer(), this.format, InternalLang.ECONOMY_FAILED);
             }
-            return new ChargeStatus(false, -1);
+            return ChargeStatus.ENCODED_INVALID;
+        }
+        long fixed = Money.multiply(Money.of(cost), this.tax());
+        String prev = EconomyCaller.enter(this.plugin);
+        try {
+            return ChargeStatus.encode(this.getEconomy().has(p, Money.toDouble(fixed)), fixed);
+        } finally {
+            EconomyCaller.exit(prev);
         }
-        return new ChargeStatus(this.getEconomy().has(p, cost), cost);
     }
 
     /**
@@ -146,8 +206,14 @@ public class CEconomy extends Observable {
             }
             return false;
         }
-        cost *= this.tax();
-        EconomyResponse r = this.getEconomy().withdrawPlayer(p, cost);
+        cost = Money.toDouble(Money.multiply(Money.of(cost), this.tax()));
+        EconomyResponse r;
+        AccountLocks.lock(p.getUniqueId());
+        try {
+            r = this.withdraw(this.getEconomy(), p, cost);
+        } finally {
+            AccountLocks.unlock(p.getUniqueId());
+        }
         boolean bad = r.type == EconomyResponse.ResponseType.FAILURE;
         if (bad) {
             if (p.isOnline()) {
@@ -159,6 +225,82 @@ public class CEconomy extends Observable {
         return !bad;
     }
 
+    /**
+     * Places a hold on money from the {@link OfflinePlayer}, replacing a call
+     * to {@link CEconomy#canCharge(OfflinePlayer, double)} followed by
+     * {@link CEconomy#charge(OfflinePlayer, double)}. The cost is multiplied by
+     * {@link CEconomy#taxRate()} and withdrawn immediately, which is the only
+     * economy mutation made if the returned {@link Reservation} is committed.
+     * Releasing the reservation, or letting it expire, refunds the money
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param p The {@link OfflinePlayer} to hold money from
+     * @param cost The amount of money to hold
+     * @param timeout The time after which the hold is released
+     * @param unit The {@link TimeUnit} of the {@code timeout} parameter
+     * @return The {@link Reservation} for the held money, or {@code null} if
+     *         the money could not be withdrawn. If {@link CEconomy#isEnabled()}
+     *         returns {@code false}, this will be a reservation of 0
+     */
+    public Reservation reserve(OfflinePlayer p, double cost, long timeout, TimeUnit unit) {
+        if (!this.isEnabled()) {
+            return new Reservation(this, p, 0);
+        }
+        if (cost < 0) {
+            if (p.isOnline()) {
+                Lang.sendMessage(p.getPlayer(), this.format, InternalLang.ECONOMY_FAILED);
+            }
+            return null;
+        }
+        cost = Money.toDouble(Money.multiply(Money.of(cost), this.tax()));
+        EconomyResponse r;
+        AccountLocks.lock(p.getUniqueId());
+        try {
+            r = this.withdraw(this.getEconomy(), p, cost);
+        } finally {
+            AccountLocks.unlock(p.getUniqueId());
+        }
+        if (r.type == EconomyResponse.ResponseType.FAILURE) {
+            if (p.isOnline()) {
+                Lang.sendMessage(p.getPlayer(), this.format, InternalLang.ECONOMY_INSUFF, cost);
+            }
+            return null;
+        }
+        this.notifyObservers(new EconomyChangePacket(p, r.balance));
+        Reservation back = new Reservation(this, p, cost);
+        back.setExpiry(TimingWheel.getDefault().schedule(back::release, timeout, unit));
+        return back;
+    }
+
+    /**
+     * Returns held money to an {@link OfflinePlayer} without applying
+     * {@link CEconomy#bonusRate()}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param p The {@link OfflinePlayer} to refund
+     * @param amount The amount to refund
+     * @return {@code true} if the money was deposited successfully
+     */
+    boolean refund(OfflinePlayer p, double amount) {
+        EconomyResponse r;
+        AccountLocks.lock(p.getUniqueId());
+        try {
+            r = this.deposit(this.getEconomy(), p, amount);
+        } finally {
+            AccountLocks.unlock(p.getUniqueId());
+        }
+        boolean bad = r.type == EconomyResponse.ResponseType.FAILURE;
+        if (bad) {
+            Debugger.print(Level.SEVERE, "Failed to refund %.2f to '%s'", amount, p.getUniqueId());
+        }
+        this.notifyObservers(new EconomyChangePacket(p, r.balance));
+        return !bad;
+    }
+
     /**
      * Gives money to the {@link OfflinePlayer}
      *
@@ -189,12 +331,312 @@ public class CEconomy extends Observable {
         if (!this.isEnabled()) {
             return true;
         }
-        amount *= this.bonus();
-        EconomyResponse r = this.getEconomy().depositPlayer(p, amount);
+        amount = Money.toDouble(Money.multiply(Money.of(amount), this.bonus()));
+        EconomyResponse r;
+        AccountLocks.lock(p.getUniqueId());
+        try {
+            r = this.deposit(this.getEconomy(), p, amount);
+        } finally {
+            AccountLocks.unlock(p.getUniqueId());
+        }
         this.notifyObservers(new EconomyChangePacket(p, this.getBalance(p)));
         return r.type != EconomyResponse.ResponseType.FAILURE;
     }
 
+    /**
+     * Moves money from one {@link OfflinePlayer} to another
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @see CEconomy#transfer(OfflinePlayer, OfflinePlayer, double)
+     * @param from The {@link OfflinePlayer} to take money from
+     * @param to The {@link OfflinePlayer} to give money to
+     * @param value A {@link ConfigFile} double value representing how much to move
+     * @return {@code true} if the money was moved successfully, or if
+     *         {@link CEconomy#isEnabled()} returns {@code false}
+     */
+    public boolean transfer(OfflinePlayer from, OfflinePlayer to, ConfigFile value) {
+        return this.transfer(from, to, value.as(double.class));
+    }
+
+    /**
+     * Moves money from one {@link OfflinePlayer} to another as a single
+     * operation. Both accounts are locked for the duration of the transfer, so
+     * no other {@link CEconomy} call can observe or modify either balance
+     * in between the withdrawal and the deposit. The sender is charged the
+     * amount multiplied by {@link CEconomy#taxRate()}, and the receiver is
+     * given the untaxed amount. If the deposit fails, the withdrawn money is
+     * returned to the sender before the accounts are unlocked
+     * <br><br>
+     * Note that the locks only coordinate calls made through {@link CEconomy},
+     * plugins using Vault directly can still interleave with a transfer
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param from The {@link OfflinePlayer} to take money from
+     * @param to The {@link OfflinePlayer} to give money to
+     * @param amount The amount of money to move
+     * @return {@code true} if the money was moved successfully, or if
+     *         {@link CEconomy#isEnabled()} returns {@code false}
+     */
+    public boolean transfer(OfflinePlayer from, OfflinePlayer to, double amount) {
+        if (!this.isEnabled()) {
+            return true;
+        }
+        if (amount < 0) {
+            if (from.isOnline()) {
+                Lang.sendMessage(from.getPlayer(), this.format, InternalLang.ECONOMY_FAILED);
+            }
+            return false;
+        }
+        double cost = Money.toDouble(Money.multiply(Money.of(amount), this.tax()));
+        Economy e = this.getEconomy();
+        boolean withdrawn = false;
+        boolean deposited = false;
+        AccountLocks.lock(from.getUniqueId(), to.getUniqueId());
+        try {
+            withdrawn = this.withdraw(e, from, cost).type != EconomyResponse.ResponseType.FAILURE;
+            if (withdrawn) {
+                try {
+                    deposited = this.deposit(e, to, amount).type != EconomyResponse.ResponseType.FAILURE;
+                } finally {
+                    if (!deposited && this.deposit(e, from, cost).type == EconomyResponse.ResponseType.FAILURE) {
+                        Debugger.print(Level.SEVERE, "Failed to refund %.2f to '%s' after a failed transfer to '%s'",
+                                cost, from.getUniqueId(), to.getUniqueId());
+                    }
+                }
+            }
+        } finally {
+            AccountLocks.unlock(from.getUniqueId(), to.getUniqueId());
+        }
+        if (!withdrawn) {
+            if (from.isOnline()) {
+                Lang.sendMessage(from.getPlayer(), this.format, InternalLang.ECONOMY_INSUFF, cost);
+            }
+            return false;
+        }
+        if (!deposited && from.isOnline()) {
+            Lang.sendMessage(from.getPlayer(), this.format, InternalLang.ECONOMY_FAILED);
+        }
+        this.notifyObservers(new EconomyChangePacket(from, this.getBalance(from)));
+        if (deposited) {
+            this.notifyObservers(new EconomyChangePacket(to, this.getBalance(to)));
+        }
+        return deposited;
+    }
+
+    /**
+     * Takes money away from every passed {@link OfflinePlayer} as a single
+     * batch. Each amount is multiplied by {@link CEconomy#taxRate()} as with
+     * {@link CEconomy#charge(OfflinePlayer, double)}, however no messages are
+     * sent to the players. Observers are notified once for the whole batch,
+     * and the calls are spread across threads if
+     * {@link CEconomy#parallelBulk()} returns {@code true}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param players The {@link OfflinePlayer OfflinePlayers} to take money from
+     * @param amounts The amount to take from the player at the same index
+     * @return The success of each charge, in the same order as {@code players}.
+     *         Every element is {@code true} if {@link CEconomy#isEnabled()}
+     *         returns {@code false}
+     * @throws IllegalArgumentException If the array lengths do not match
+     */
+    public boolean[] chargeAll(OfflinePlayer[] players, double[] amounts) {
+        return this.bulk(players, amounts, true);
+    }
+
+    /**
+     * Takes the same amount of money away from every passed
+     * {@link OfflinePlayer}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @see CEconomy#chargeAll(OfflinePlayer[], double[])
+     * @param players The {@link OfflinePlayer OfflinePlayers} to take money from
+     * @param amount The amount to take from each player
+     * @return The success of each charge, in the iteration order of
+     *         {@code players}
+     */
+    public boolean[] chargeAll(Collection<? extends OfflinePlayer> players, double amount) {
+        return this.chargeAll(players.toArray(new OfflinePlayer[players.size()]), CEconomy.fill(players.size(), amount));
+    }
+
+    /**
+     * Gives money to every passed {@link OfflinePlayer} as a single batch.
+     * Each amount is multiplied by {@link CEconomy#bonusRate()} as with
+     * {@link CEconomy#pay(OfflinePlayer, double)}. Observers are notified once
+     * for the whole batch, and the calls are spread across threads if
+     * {@link CEconomy#parallelBulk()} returns {@code true}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param players The {@link OfflinePlayer OfflinePlayers} to give money to
+     * @param amounts The amount to give to the player at the same index
+     * @return The success of each deposit, in the same order as
+     *         {@code players}. Every element is {@code true} if
+     *         {@link CEconomy#isEnabled()} returns {@code false}
+     * @throws IllegalArgumentException If the array lengths do not match
+     */
+    public boolean[] payAll(OfflinePlayer[] players, double[] amounts) {
+        return this.bulk(players, amounts, false);
+    }
+
+    /**
+     * Gives the same amount of money to every passed {@link OfflinePlayer}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @see CEconomy#payAll(OfflinePlayer[], double[])
+     * @param players The {@link OfflinePlayer OfflinePlayers} to give money to
+     * @param amount The amount to give to each player
+     * @return The success of each deposit, in the iteration order of
+     *         {@code players}
+     */
+    public boolean[] payAll(Collection<? extends OfflinePlayer> players, double amount) {
+        return this.payAll(players.toArray(new OfflinePlayer[players.size()]), CEconomy.fill(players.size(), amount));
+    }
+
+    /**
+     * Runs a batch of withdrawals or deposits. The resulting balances are read
+     * from the {@link EconomyResponse} rather than looked up again
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param players The {@link OfflinePlayer OfflinePlayers} to modify
+     * @param amounts The amount for the player at the same index
+     * @param withdraw {@code true} to withdraw, {@code false} to deposit
+     * @return The success of each operation
+     */
+    private boolean[] bulk(OfflinePlayer[] players, double[] amounts, boolean withdraw) {
+        Exceptions.isTrue(players.length == amounts.length, "Player and amount arrays must be the same length", IllegalArgumentException.class);
+        boolean[] back = new boolean[players.length];
+        if (!this.isEnabled()) {
+            Arrays.fill(back, true);
+            return back;
+        }
+        Economy e = this.getEconomy();
+        long rate = withdraw ? this.tax() : this.bonus();
+        EconomyChangePacket[] packets = new EconomyChangePacket[players.length];
+        IntStream indices = IntStream.range(0, players.length);
+        if (this.parallelBulk()) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> {
+            OfflinePlayer p = players[i];
+            if (amounts[i] < 0) {
+                return;
+            }
+            double amount = Money.toDouble(Money.multiply(Money.of(amounts[i]), rate));
+            EconomyResponse r;
+            AccountLocks.lock(p.getUniqueId());
+            try {
+                r = withdraw ? this.withdraw(e, p, amount) : this.deposit(e, p, amount);
+            } finally {
+                AccountLocks.unlock(p.getUniqueId());
+            }
+            back[i] = r.type != EconomyResponse.ResponseType.FAILURE;
+            packets[i] = new EconomyChangePacket(p, r.balance);
+        });
+        List<EconomyChangePacket> batch = new ArrayList<>(packets.length);
+        for (EconomyChangePacket packet : packets) {
+            if (packet != null) {
+                batch.add(packet);
+            }
+        }
+        this.notifyObservers(batch);
+        return back;
+    }
+
+    /**
+     * Withdraws money through the {@link Economy}, marking this plugin as the
+     * caller for the {@link VaultProxy}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param e The {@link Economy} to withdraw through
+     * @param p The {@link OfflinePlayer} to take money from
+     * @param amount The amount to take
+     * @return The {@link EconomyResponse} from the economy
+     */
+    private EconomyResponse withdraw(Economy e, OfflinePlayer p, double amount) {
+        String prev = EconomyCaller.enter(this.plugin);
+        try {
+            return e.withdrawPlayer(p, amount);
+        } finally {
+            EconomyCaller.exit(prev);
+        }
+    }
+
+    /**
+     * Deposits money through the {@link Economy}, marking this plugin as the
+     * caller for the {@link VaultProxy}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param e The {@link Economy} to deposit through
+     * @param p The {@link OfflinePlayer} to give money to
+     * @param amount The amount to give
+     * @return The {@link EconomyResponse} from the economy
+     */
+    private EconomyResponse deposit(Economy e, OfflinePlayer p, double amount) {
+        String prev = EconomyCaller.enter(this.plugin);
+        try {
+            return e.depositPlayer(p, amount);
+        } finally {
+            EconomyCaller.exit(prev);
+        }
+    }
+
+    /**
+     * Returns an array of the given length filled with one value
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param length The length of the array
+     * @param value The value for each element
+     * @return The filled array
+     */
+    private static double[] fill(int length, double value) {
+        double[] back = new double[length];
+        Arrays.fill(back, value);
+        return back;
+    }
+
+    /**
+     * Notifies observers of a batch of changes. Plain {@link Observer Observers}
+     * receive each {@link EconomyChangePacket} individually, while
+     * {@link EconomyObserver EconomyObservers} receive the batch in a single
+     * call to {@link EconomyObserver#update(CEconomy, List)}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param batch The {@link EconomyChangePacket EconomyChangePackets} of the
+     *              batch
+     */
+    public void notifyObservers(List<EconomyChangePacket> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.forEach(packet -> {
+            this.setChanged();
+            super.notifyObservers(packet);
+        });
+        List<EconomyChangePacket> view = Collections.unmodifiableList(batch);
+        this.observers.forEach(ob -> ob.update(this, view));
+    }
+
     /**
      * Modified to send a Bukkit event and force notification of the change
      * <br><br> {@inheritDoc}
@@ -231,7 +673,7 @@ public class CEconomy extends Observable {
      * Returns the relevant balance for the {@link OfflinePlayer}
      *
      * @since 0.0.1
-     * @version 0.1.0
+     * @version 0.3.2
      *
      * @param p The {@link OfflinePlayer} for which the balanced is checked
      * @return The OfflinePlayer's balance, or -1 if
@@ -241,7 +683,12 @@ public class CEconomy extends Observable {
         if (!this.isEnabled()) {
             return -1;
         }
-        return this.getEconomy().getBalance(p);
+        String prev = EconomyCaller.enter(this.plugin);
+        try {
+            return this.getEconomy().getBalance(p);
+        } finally {
+            EconomyCaller.exit(prev);
+        }
     }
 
     /**
@@ -285,7 +732,7 @@ public class CEconomy extends Observable {
      * @param o The {@link EconomyObserver} to be notified when the economy state changes
      */
     public synchronized void addObserver(EconomyObserver o) {
-        super.addObserver(o);
+        this.observers.add(o);
     }
 
     /**
@@ -305,20 +752,77 @@ public class CEconomy extends Observable {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param o {@inheritDoc}
+     */
+    @Override
+    public synchronized void deleteObserver(Observer o) {
+        if (o instanceof EconomyObserver) {
+            this.observers.remove(o);
+        }
+        super.deleteObserver(o);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @Override
+    public synchronized void deleteObservers() {
+        this.observers.clear();
+        super.deleteObservers();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public synchronized int countObservers() {
+        return this.observers.size() + super.countObservers();
+    }
+
+    /**
+     * Represents whether the bulk operations such as
+     * {@link CEconomy#payAll(OfflinePlayer[], double[])} may call the
+     * underlying {@link Economy} from multiple threads at once. This method is
+     * purposely overridable, and should only return {@code true} if the
+     * economy provider in use is known to be thread-safe
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if bulk operations can run in parallel
+     */
+    public boolean parallelBulk() {
+        return false;
+    }
+
     /**
      * The internal retrieval for the tax rate of money. Adds a verification
      * step to ensure values are not negative or zero
      *
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      *
-     * @return The return value of {@link CEconomy#taxRate()}, or 1 if the value
-     *         was negative or zero
+     * @return The return value of {@link CEconomy#taxRate()} in {@link Money}
+     *         fixed-point, or 1 if the value was negative or zero
      */
-    private double tax() {
-        double back = this.taxRate();
+    private long tax() {
+        long back = Money.of(this.taxRate());
         if (back <= 0) {
-            back = 1D;
+            back = Money.SCALE;
         }
         return back;
     }
@@ -343,15 +847,15 @@ public class CEconomy extends Observable {
      * step to ensure values are not negative or zero
      *
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      *
-     * @return The return value of {@link CEconomy#bonusRate()}, or 1 if the
-     *         value was negative or zero
+     * @return The return value of {@link CEconomy#bonusRate()} in {@link Money}
+     *         fixed-point, or 1 if the value was negative or zero
      */
-    private double bonus() {
-        double back = this.bonusRate();
+    private long bonus() {
+        long back = Money.of(this.bonusRate());
         if (back <= 0) {
-            back = 1D;
+            back = Money.SCALE;
         }
         return back;
     }
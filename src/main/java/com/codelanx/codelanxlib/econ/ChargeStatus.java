@@ -29,6 +29,15 @@ package com.codelanx.codelanxlib.econ;
  */
 public class ChargeStatus {
 
+    /** The status returned when the economy is disabled */
+    public static final ChargeStatus DISABLED = new ChargeStatus(true, 0);
+    /** The status returned when the requested charge is negative */
+    public static final ChargeStatus INVALID = new ChargeStatus(false, -1);
+    /** The encoded form of {@link ChargeStatus#DISABLED} */
+    public static final long ENCODED_DISABLED = 0;
+    /** The encoded form of {@link ChargeStatus#INVALID} */
+    public static final long ENCODED_INVALID = Long.MIN_VALUE;
+
     /** Whether or not the transaction is capable of being done */
     private final boolean status;
     /** The amount being charged */
@@ -73,4 +82,53 @@ public class ChargeStatus {
         return this.amount;
     }
 
+    /**
+     * Encodes a status into a single {@code long}. A chargeable status holds
+     * the {@link Money} fixed-point amount as is, while an unchargeable status
+     * holds its bitwise complement
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param status {@code true} if the charge can be made
+     * @param amount The non-negative {@link Money} fixed-point amount
+     * @return The encoded status
+     */
+    static long encode(boolean status, long amount) {
+        return status ? amount : ~amount;
+    }
+
+    /**
+     * Returns whether an encoded status from
+     * {@link CEconomy#checkCharge(org.bukkit.OfflinePlayer, double)} can be
+     * charged
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param encoded The encoded status
+     * @return {@code true} if the player can pay the charge
+     */
+    public static boolean decodeStatus(long encoded) {
+        return encoded >= 0;
+    }
+
+    /**
+     * Returns the amount being charged from an encoded status from
+     * {@link CEconomy#checkCharge(org.bukkit.OfflinePlayer, double)}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param encoded The encoded status
+     * @return The amount being charged, or -1 for
+     *         {@link ChargeStatus#ENCODED_INVALID}
+     */
+    public static double decodeAmount(long encoded) {
+        if (encoded == ENCODED_INVALID) {
+            return -1;
+        }
+        return Money.toDouble(encoded >= 0 ? encoded : ~encoded);
+    }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+/**
+ * Carries the name of the plugin making an economy call from {@link CEconomy}
+ * down to {@link VaultProxy}, without walking the stack. Calls made directly
+ * against Vault have no known caller
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class EconomyCaller {
+
+    /** The plugin name for the economy call running on this thread */
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+
+    private EconomyCaller() {
+    }
+
+    /**
+     * Returns the name of the plugin making the current economy call
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The plugin name, or {@code null} if unknown
+     */
+    static String get() {
+        return EconomyCaller.current.get();
+    }
+
+    /**
+     * Marks the start of an economy call made by a plugin
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param plugin The name of the calling plugin
+     * @return The previous caller, to be passed to
+     *         {@link EconomyCaller#exit(String)}
+     */
+    static String enter(String plugin) {
+        String prev = EconomyCaller.current.get();
+        EconomyCaller.current.set(plugin);
+        return prev;
+    }
+
+    /**
+     * Marks the end of an economy call, restoring the previous caller
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param previous The value returned from
+     *                 {@link EconomyCaller#enter(String)}
+     */
+    static void exit(String previous) {
+        EconomyCaller.current.set(previous);
+    }
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import com.codelanx.commons.logging.Debugger;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Records the latency, rate and failures of every call made to the Vault
+ * {@link Economy} through {@link VaultProxy}, grouped by calling plugin and
+ * method. Calls made through a {@link CEconomy} are attributed to its plugin,
+ * while calls made directly against Vault are grouped under
+ * {@link EconomyMetrics#UNKNOWN_PLUGIN}. Counters are lock-free, and latencies
+ * are kept in power-of-two microsecond buckets
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class EconomyMetrics {
+
+    /** The plugin name used for calls without a known caller */
+    public static final String UNKNOWN_PLUGIN = "unknown";
+    /** The number of latency buckets, the last holding every slower call */
+    public static final int BUCKETS = 32;
+    private static final ConcurrentMap<String, ConcurrentMap<String, Stats>> stats = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = true;
+    private static volatile long slowCall = -1;
+    private static volatile long since = System.nanoTime();
+
+    private EconomyMetrics() {
+    }
+
+    /**
+     * Records a single economy call
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param method The name of the {@link Economy} method
+     * @param nanos The duration of the call in nanoseconds
+     * @param result The value returned from the call, or {@code null}
+     * @param thrown {@code true} if the call threw an exception
+     */
+    static void record(String method, long nanos, Object result, boolean thrown) {
+        if (!EconomyMetrics.enabled) {
+            return;
+        }
+        String plugin = EconomyCaller.get();
+        if (plugin == null) {
+            plugin = UNKNOWN_PLUGIN;
+        }
+        boolean failed = thrown || (result instanceof EconomyResponse
+                && ((EconomyResponse) result).type == EconomyResponse.ResponseType.FAILURE);
+        EconomyMetrics.getStats(plugin, method).record(nanos, failed);
+        long slow = EconomyMetrics.slowCall;
+        if (slow >= 0 && nanos > slow) {
+            Debugger.print(Level.WARNING, "Slow economy call: %s from '%s' took %.2fms",
+                    method, plugin, nanos / 1_000_000D);
+        }
+    }
+
+    /**
+     * Returns the current metrics for every plugin and method
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return A {@link Map} of plugin names to a {@link Map} of method names to
+     *         their {@link Snapshot}
+     */
+    public static Map<String, Map<String, Snapshot>> snapshot() {
+        long elapsed = System.nanoTime() - EconomyMetrics.since;
+        Map<String, Map<String, Snapshot>> back = new HashMap<>();
+        EconomyMetrics.stats.forEach((plugin, methods) -> {
+            Map<String, Snapshot> m = new HashMap<>();
+            methods.forEach((method, s) -> m.put(method, s.snapshot(elapsed)));
+            back.put(plugin, Collections.unmodifiableMap(m));
+        });
+        return Collections.unmodifiableMap(back);
+    }
+
+    /**
+     * Clears all recorded metrics and restarts the rate window
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static void reset() {
+        EconomyMetrics.stats.clear();
+        EconomyMetrics.since = System.nanoTime();
+    }
+
+    /**
+     * Sets whether calls are recorded. Recording is enabled by default
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param enabled {@code true} to record economy calls
+     */
+    public static void setEnabled(boolean enabled) {
+        EconomyMetrics.enabled = enabled;
+    }
+
+    /**
+     * Sets a duration above which economy calls are logged as slow
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param threshold The threshold, or a negative number to disable logging
+     * @param unit The {@link TimeUnit} of the {@code threshold} parameter
+     */
+    public static void setSlowCallThreshold(long threshold, TimeUnit unit) {
+        EconomyMetrics.slowCall = threshold < 0 ? -1 : unit.toNanos(threshold);
+    }
+
+    private static Stats getStats(String plugin, String method) {
+        ConcurrentMap<String, Stats> methods = EconomyMetrics.stats.get(plugin);
+        if (methods == null) {
+            methods = EconomyMetrics.stats.computeIfAbsent(plugin, k -> new ConcurrentHashMap<>());
+        }
+        Stats s = methods.get(method);
+        if (s == null) {
+            s = methods.computeIfAbsent(method, k -> new Stats());
+        }
+        return s;
+    }
+
+    /**
+     * Returns the latency bucket for a duration
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param nanos The duration in nanoseconds
+     * @return The bucket index, where bucket {@code i} holds durations below
+     *         {@code 2^i} microseconds
+     */
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static final class Stats {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        private Stats() {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos, boolean failed) {
+            this.calls.increment();
+            if (failed) {
+                this.failures.increment();
+            }
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+            this.histogram[EconomyMetrics.bucket(nanos)].increment();
+        }
+
+        private Snapshot snapshot(long elapsed) {
+            long[] hist = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                hist[i] = this.histogram[i].sum();
+            }
+            return new Snapshot(this.calls.sum(), this.failures.sum(), this.total.sum(), this.max.get(), hist, elapsed);
+        }
+
+    }
+
+    /**
+     * A point-in-time view of the metrics for one method called by one plugin
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static final class Snapshot {
+
+        private final long calls;
+        private final long failures;
+        private final long total;
+        private final long max;
+        private final long[] histogram;
+        private final long elapsed;
+
+        private Snapshot(long calls, long failures, long total, long max, long[] histogram, long elapsed) {
+            this.calls = calls;
+            this.failures = failures;
+            this.total = total;
+            this.max = max;
+            this.histogram = histogram;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Returns the number of calls made
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The number of calls
+         */
+        public long getCalls() {
+            return this.calls;
+        }
+
+        /**
+         * Returns the number of calls which failed, either by throwing or by
+         * returning a {@link EconomyResponse.ResponseType#FAILURE} response
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The number of failed calls
+         */
+        public long getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * Returns the average rate of calls since metrics were last reset
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The number of calls per second
+         */
+        public double getRate() {
+            return this.elapsed <= 0 ? 0 : this.calls / (this.elapsed / 1_000_000_000D);
+        }
+
+        /**
+         * Returns the mean duration of a call
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param unit The {@link TimeUnit} to return
+         * @return The mean duration
+         */
+        public double getMean(TimeUnit unit) {
+            return this.calls == 0 ? 0 : (double) this.total / this.calls / unit.toNanos(1);
+        }
+
+        /**
+         * Returns the duration of the slowest call
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param unit The {@link TimeUnit} to return
+         * @return The maximum duration
+         */
+        public long getMax(TimeUnit unit) {
+            return unit.convert(this.max, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns an upper bound for a latency percentile, accurate to the
+         * power-of-two bucket it falls in
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound of the percentile, in microseconds
+         */
+        public long getPercentile(double percentile) {
+            long target = (long) Math.ceil(this.calls * percentile / 100D);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.histogram[i];
+                if (seen >= target && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        /**
+         * Returns the number of calls in each latency bucket, where bucket
+         * {@code i} holds calls faster than {@code 2^i} microseconds
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return A copy of the latency histogram
+         */
+        public long[] getHistogram() {
+            return this.histogram.clone();
+        }
+
+    }
+
+}
@@ -19,6 +19,7 @@
  */
 package com.codelanx.codelanxlib.econ;
 
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -43,6 +44,23 @@ public interface EconomyObserver extends Observer {
      */
     void update(CEconomy o, EconomyChangePacket arg);
 
+    /**
+     * Called once for a batch of economy changes, such as those made by
+     * {@link CEconomy#payAll(org.bukkit.OfflinePlayer[], double[])}. By default
+     * this forwards each packet to
+     * {@link EconomyObserver#update(CEconomy, EconomyChangePacket)}, and can
+     * be overridden to handle the whole batch at once
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param o The {@link CEconomy} object being observed
+     * @param batch An unmodifiable {@link List} of the changes
+     */
+    default void update(CEconomy o, List<EconomyChangePacket> batch) {
+        batch.forEach(packet -> this.update(o, packet));
+    }
+
     /**
      * {@inheritDoc}
      *
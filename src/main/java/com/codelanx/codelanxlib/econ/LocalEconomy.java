@@ -0,0 +1,612 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import com.codelanx.codelanxlib.util.auth.PlayerIndex;
+import com.codelanx.commons.logging.Debugger;
+import com.codelanx.commons.util.Scheduler;
+import com.codelanx.commons.util.exception.Exceptions;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.ServicePriority;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * An in-process Vault {@link Economy} provider. Balances are held as
+ * fixed-point {@code long} values in a primitive concurrent map, and can be
+ * snapshotted to and restored from disk. Once registered through
+ * {@link LocalEconomy#register(Plugin, ServicePriority)}, it is proxied by
+ * {@link VaultProxy} like any other provider and used by {@link CEconomy}.
+ * It can also be constructed directly as a fast stand-in for tests and
+ * benchmarks. Bank accounts are not supported, and world names are ignored.
+ * Players referred to by name are resolved through the {@link PlayerIndex},
+ * so names which have never been seen on this server have no account
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class LocalEconomy implements Economy {
+
+    private static final int SNAPSHOT_MAGIC = 0x434C4543; //CLEC
+    private static final int SNAPSHOT_VERSION = 1;
+    /** The position of the record count, after the magic, version and digits */
+    private static final long SNAPSHOT_COUNT_OFFSET = 12;
+    /** The smallest magnitude which no longer fits into a {@code long} */
+    private static final double FIXED_LIMIT = 0x1p63;
+    private final BalanceMap balances = new BalanceMap();
+    private final String singular;
+    private final String plural;
+    private final int digits;
+    private final long scale;
+
+    /**
+     * Creates an economy named in dollars with two fractional digits
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public LocalEconomy() {
+        this("dollar", "dollars", 2);
+    }
+
+    /**
+     * Creates an economy with the given currency names and precision
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param singular The singular name of the currency
+     * @param plural The plural name of the currency
+     * @param fractionalDigits The number of digits kept after the decimal point
+     */
+    public LocalEconomy(String singular, String plural, int fractionalDigits) {
+        Exceptions.isTrue(fractionalDigits >= 0 && fractionalDigits <= 8,
+                "Fractional digits must be between 0 and 8", IllegalArgumentException.class);
+        this.singular = singular;
+        this.plural = plural;
+        this.digits = fractionalDigits;
+        this.scale = LocalEconomy.pow10(fractionalDigits);
+    }
+
+    /**
+     * Registers this economy with Bukkit's services manager, where it will be
+     * picked up by {@link VaultProxy} and {@link CEconomy}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param plugin The {@link Plugin} providing the economy
+     * @param priority The {@link ServicePriority} to register at
+     */
+    public void register(Plugin plugin, ServicePriority priority) {
+        Bukkit.getServer().getServicesManager().register(Economy.class, this, plugin, priority);
+    }
+
+    /**
+     * Writes every balance to a snapshot file. The snapshot is written to a
+     * temporary file first, and then moved over the target. Accounts may be
+     * created while the balances are written, so the record count in the
+     * header is filled in once every record has been written
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The file to write to
+     * @throws IOException If the snapshot could not be written
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        int[] count = new int[1];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(this.digits);
+            out.writeInt(0); //record count, patched below
+            IOException[] error = new IOException[1];
+            this.balances.forEach((msb, lsb, balance) -> {
+                if (error[0] != null) {
+                    return;
+                }
+                try {
+                    out.writeLong(msb);
+                    out.writeLong(lsb);
+                    out.writeLong(balance);
+                    count[0]++;
+                } catch (IOException ex) {
+                    error[0] = ex;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        try (RandomAccessFile header = new RandomAccessFile(temp, "rw")) {
+            header.seek(SNAPSHOT_COUNT_OFFSET);
+            header.writeInt(count[0]);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads balances from a snapshot file, replacing the balances of any
+     * accounts it contains. Snapshots written with a different precision are
+     * rescaled to this economy's precision
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The file to read from
+     * @throws IOException If the snapshot could not be read or is invalid
+     */
+    public void load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a valid economy snapshot: " + file);
+            }
+            int fileDigits = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long msb = in.readLong();
+                long lsb = in.readLong();
+                long balance = in.readLong();
+                if (fileDigits < this.digits) {
+                    try {
+                        balance = Math.multiplyExact(balance, LocalEconomy.pow10(this.digits - fileDigits));
+                    } catch (ArithmeticException ex) {
+                        throw new IOException("Balance out of range after rescaling: " + file, ex);
+                    }
+                } else if (fileDigits > this.digits) {
+                    balance /= LocalEconomy.pow10(fileDigits - this.digits);
+                }
+                this.balances.set(msb, lsb, balance);
+            }
+        }
+    }
+
+    /**
+     * Periodically saves a snapshot on the {@link Scheduler} service
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The file to write snapshots to
+     * @param interval Time (in seconds) between snapshots
+     * @return The scheduled task writing the snapshots
+     */
+    public ScheduledFuture<?> autosave(File file, long interval) {
+        return Scheduler.runAsyncTaskRepeat(() -> {
+            try {
+                this.save(file);
+            } catch (IOException ex) {
+                Debugger.error(ex, "Error saving economy snapshot to '%s'", file);
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Returns the number of accounts held by this economy
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of accounts
+     */
+    public int getAccountCount() {
+        return this.balances.size();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "CodelanxLib";
+    }
+
+    @Override
+    public boolean hasBankSupport() {
+        return false;
+    }
+
+    @Override
+    public int fractionalDigits() {
+        return this.digits;
+    }
+
+    @Override
+    public String format(double amount) {
+        return String.format("%." + this.digits + "f %s", amount,
+                amount == 1 ? this.singular : this.plural);
+    }
+
+    @Override
+    public String currencyNamePlural() {
+        return this.plural;
+    }
+
+    @Override
+    public String currencyNameSingular() {
+        return this.singular;
+    }
+
+    @Override
+    public boolean hasAccount(String playerName) {
+        UUID id = PlayerIndex.getUUID(playerName);
+        return id != null && this.balances.contains(id);
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+        return this.balances.contains(player.getUniqueId());
+    }
+
+    @Override
+    public boolean hasAccount(String playerName, String worldName) {
+        return this.hasAccount(playerName);
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+        return this.hasAccount(player);
+    }
+
+    @Override
+    public double getBalance(String playerName) {
+        UUID id = PlayerIndex.getUUID(playerName);
+        return id == null ? 0 : this.toDouble(this.balances.get(id));
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player) {
+        return this.toDouble(this.balances.get(player.getUniqueId()));
+    }
+
+    @Override
+    public double getBalance(String playerName, String world) {
+        return this.getBalance(playerName);
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+        return this.getBalance(player);
+    }
+
+    @Override
+    public boolean has(String playerName, double amount) {
+        UUID id = PlayerIndex.getUUID(playerName);
+        return id != null && this.has(id, amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        return this.has(player.getUniqueId(), amount);
+    }
+
+    @Override
+    public boolean has(String playerName, String worldName, double amount) {
+        return this.has(playerName, amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+        return this.has(player, amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, double amount) {
+        UUID id = PlayerIndex.getUUID(playerName);
+        return id == null ? LocalEconomy.unknown(playerName) : this.withdraw(id, amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+        return this.withdraw(player.getUniqueId(), amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
+        return this.withdrawPlayer(playerName, amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+        return this.withdrawPlayer(player, amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(String playerName, double amount) {
+        UUID id = PlayerIndex.getUUID(playerName);
+        return id == null ? LocalEconomy.unknown(playerName) : this.deposit(id, amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+        return this.deposit(player.getUniqueId(), amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
+        return this.depositPlayer(playerName, amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+        return this.depositPlayer(player, amount);
+    }
+
+    @Override
+    public EconomyResponse createBank(String name, String player) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse createBank(String name, OfflinePlayer player) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse deleteBank(String name) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse bankBalance(String name) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse bankHas(String name, double amount) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse bankWithdraw(String name, double amount) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse bankDeposit(String name, double amount) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse isBankOwner(String name, String playerName) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse isBankOwner(String name, OfflinePlayer player) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse isBankMember(String name, String playerName) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public EconomyResponse isBankMember(String name, OfflinePlayer player) {
+        return LocalEconomy.noBanks();
+    }
+
+    @Override
+    public List<String> getBanks() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean createPlayerAccount(String playerName) {
+        UUID id = PlayerIndex.getUUID(playerName);
+        return id != null && this.balances.create(id);
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+        return this.balances.create(player.getUniqueId());
+    }
+
+    @Override
+    public boolean createPlayerAccount(String playerName, String worldName) {
+        return this.createPlayerAccount(playerName);
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+        return this.createPlayerAccount(player);
+    }
+
+    /**
+     * Returns whether an account holds at least the given amount
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @param amount The amount of money
+     * @return {@code true} if the balance covers the amount
+     */
+    private boolean has(UUID id, double amount) {
+        if (!this.fits(amount)) {
+            return amount < 0;
+        }
+        return this.balances.get(id) >= this.toFixed(amount);
+    }
+
+    /**
+     * Takes money from an account if it holds enough
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @param amount The amount of money
+     * @return The resulting {@link EconomyResponse}
+     */
+    private EconomyResponse withdraw(UUID id, double amount) {
+        double current = this.toDouble(this.balances.get(id));
+        if (amount < 0) {
+            return new EconomyResponse(0, current, EconomyResponse.ResponseType.FAILURE, "Cannot withdraw negative funds");
+        }
+        if (!this.fits(amount)) {
+            return new EconomyResponse(0, current, EconomyResponse.ResponseType.FAILURE, "Amount out of range");
+        }
+        long fixed = this.toFixed(amount);
+        long balance = this.balances.withdraw(id, fixed);
+        if (balance < 0) {
+            return new EconomyResponse(0, current, EconomyResponse.ResponseType.FAILURE, "Insufficient funds");
+        }
+        return new EconomyResponse(this.toDouble(fixed), this.toDouble(balance), EconomyResponse.ResponseType.SUCCESS, null);
+    }
+
+    /**
+     * Adds money to an account, refusing any deposit which would overflow
+     * the fixed-point balance
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The account {@link UUID}
+     * @param amount The amount of money
+     * @return The resulting {@link EconomyResponse}
+     */
+    private EconomyResponse deposit(UUID id, double amount) {
+        if (amount < 0) {
+            return new EconomyResponse(0, this.toDouble(this.balances.get(id)), EconomyResponse.ResponseType.FAILURE, "Cannot deposit negative funds");
+        }
+        if (!this.fits(amount)) {
+            return new EconomyResponse(0, this.toDouble(this.balances.get(id)), EconomyResponse.ResponseType.FAILURE, "Amount out of range");
+        }
+        long fixed = this.toFixed(amount);
+        try {
+            long balance = this.balances.deposit(id, fixed);
+            return new EconomyResponse(this.toDouble(fixed), this.toDouble(balance), EconomyResponse.ResponseType.SUCCESS, null);
+        } catch (ArithmeticException ex) {
+            return new EconomyResponse(0, this.toDouble(this.balances.get(id)), EconomyResponse.ResponseType.FAILURE, "Balance would exceed the maximum");
+        }
+    }
+
+    /**
+     * Returns whether an amount of money is a number which can be held in
+     * this economy's fixed-point form
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param amount The amount of money
+     * @return {@code true} if {@link LocalEconomy#toFixed(double)} can
+     *         represent the amount
+     */
+    private boolean fits(double amount) {
+        return Math.abs(amount * this.scale) < LocalEconomy.FIXED_LIMIT;
+    }
+
+    /**
+     * Converts an amount of money into this economy's fixed-point form,
+     * rounding to the nearest representable value
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param amount The amount of money, which must pass
+     *               {@link LocalEconomy#fits(double)}
+     * @return The fixed-point amount
+     */
+    private long toFixed(double amount) {
+        return Math.round(amount * this.scale);
+    }
+
+    /**
+     * Converts a fixed-point amount back into a {@code double}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param fixed The fixed-point amount
+     * @return The amount of money
+     */
+    private double toDouble(long fixed) {
+        return (double) fixed / this.scale;
+    }
+
+    /**
+     * Returns the response used for all bank operations
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return A {@link EconomyResponse.ResponseType#NOT_IMPLEMENTED} response
+     */
+    private static EconomyResponse noBanks() {
+        return new EconomyResponse(0, 0, EconomyResponse.ResponseType.NOT_IMPLEMENTED, "Bank accounts are not supported");
+    }
+
+    /**
+     * Returns the response used for names missing from the
+     * {@link PlayerIndex}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name which could not be resolved
+     * @return A {@link EconomyResponse.ResponseType#FAILURE} response
+     */
+    private static EconomyResponse unknown(String name) {
+        return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Unknown player '" + name + "'");
+    }
+
+    /**
+     * Returns ten raised to a non-negative power
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param exp The exponent
+     * @return {@code 10^exp}
+     */
+    private static long pow10(int exp) {
+        long back = 1;
+        for (int i = 0; i < exp; i++) {
+            back *= 10;
+        }
+        return back;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point arithmetic for amounts of money. An amount is a plain
+ * {@code long} counting units of {@code 1 / SCALE}, so sums and rate
+ * multiplications are exact to {@link Money#DECIMALS} places and never
+ * allocate. Rates such as {@link CEconomy#taxRate()} use the same scale
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class Money {
+
+    /** The number of decimal places kept */
+    public static final int DECIMALS = 4;
+    /** The number of fixed-point units in 1 */
+    public static final long SCALE = 10_000L;
+
+    private Money() {
+    }
+
+    /**
+     * Converts a {@code double} amount to fixed-point, rounding to the nearest
+     * unit
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param amount The amount to convert
+     * @return The fixed-point amount
+     */
+    public static long of(double amount) {
+        return Math.round(amount * SCALE);
+    }
+
+    /**
+     * Converts a fixed-point amount to a {@code double}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param money The fixed-point amount
+     * @return The amount as a {@code double}
+     */
+    public static double toDouble(long money) {
+        return (double) money / SCALE;
+    }
+
+    /**
+     * Multiplies a fixed-point amount by a fixed-point rate, rounding half to
+     * even. Products too large for a {@code long} are computed exactly
+     * instead of overflowing
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param money The fixed-point amount
+     * @param rate The fixed-point rate
+     * @return The fixed-point product
+     * @throws ArithmeticException If the result does not fit in a {@code long}
+     */
+    public static long multiply(long money, long rate) {
+        long product;
+        try {
+            product = Math.multiplyExact(money, rate);
+        } catch (ArithmeticException ex) {
+            return BigDecimal.valueOf(money).multiply(BigDecimal.valueOf(rate))
+                    .divide(BigDecimal.valueOf(SCALE), 0, RoundingMode.HALF_EVEN).longValueExact();
+        }
+        long quotient = Math.floorDiv(product, SCALE);
+        long twice = Math.floorMod(product, SCALE) * 2;
+        if (twice > SCALE || (twice == SCALE && (quotient & 1) != 0)) {
+            quotient++;
+        }
+        return quotient;
+    }
+
+    /**
+     * Formats a fixed-point amount with all of its decimal places
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param money The fixed-point amount
+     * @return The amount as a plain decimal string
+     */
+    public static String toString(long money) {
+        return BigDecimal.valueOf(money, DECIMALS).toPlainString();
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import com.codelanx.codelanxlib.util.TimingWheel;
+import org.bukkit.OfflinePlayer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hold on funds placed by
+ * {@link CEconomy#reserve(OfflinePlayer, double, long, java.util.concurrent.TimeUnit)}.
+ * The money has already been withdrawn when the hold is placed, so committing
+ * costs nothing, while releasing it refunds the player. A reservation that is
+ * neither committed nor released before it expires is released automatically
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class Reservation {
+
+    private static final int PENDING = 0;
+    private static final int COMMITTED = 1;
+    private static final int RELEASED = 2;
+    private final CEconomy econ;
+    private final OfflinePlayer player;
+    private final double amount;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private volatile TimingWheel.Timeout expiry;
+
+    /**
+     * Constructor. Assigns parameters to fields
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param econ The {@link CEconomy} that withdrew the funds
+     * @param player The {@link OfflinePlayer} whose funds are held
+     * @param amount The amount that was withdrawn
+     */
+    Reservation(CEconomy econ, OfflinePlayer player, double amount) {
+        this.econ = econ;
+        this.player = player;
+        this.amount = amount;
+    }
+
+    /**
+     * Keeps the held funds, ending the reservation
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if the reservation was still pending
+     */
+    public boolean commit() {
+        if (!this.state.compareAndSet(PENDING, COMMITTED)) {
+            return false;
+        }
+        this.cancelExpiry();
+        return true;
+    }
+
+    /**
+     * Returns the held funds to the player, ending the reservation
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if the reservation was still pending and the
+     *         refund succeeded
+     */
+    public boolean release() {
+        if (!this.state.compareAndSet(PENDING, RELEASED)) {
+            return false;
+        }
+        this.cancelExpiry();
+        return this.amount <= 0 || this.econ.refund(this.player, this.amount);
+    }
+
+    /**
+     * Returns whether this reservation has been neither committed nor released
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if the funds are still held
+     */
+    public boolean isPending() {
+        return this.state.get() == PENDING;
+    }
+
+    /**
+     * Returns whether this reservation was committed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if {@link Reservation#commit()} succeeded
+     */
+    public boolean isCommitted() {
+        return this.state.get() == COMMITTED;
+    }
+
+    /**
+     * Returns the {@link OfflinePlayer} whose funds are held
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The relevant {@link OfflinePlayer}
+     */
+    public OfflinePlayer getPlayer() {
+        return this.player;
+    }
+
+    /**
+     * The amount held, including any modifications such as taxes
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The amount held
+     */
+    public double getAmount() {
+        return this.amount;
+    }
+
+    /**
+     * Assigns the expiry task for this reservation
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param expiry The {@link TimingWheel.Timeout} that releases the funds
+     */
+    void setExpiry(TimingWheel.Timeout expiry) {
+        this.expiry = expiry;
+        if (!this.isPending()) {
+            expiry.cancel();
+        }
+    }
+
+    /**
+     * Cancels the expiry task, if any
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private void cancelExpiry() {
+        TimingWheel.Timeout t = this.expiry;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+}
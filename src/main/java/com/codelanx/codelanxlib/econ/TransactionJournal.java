@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.econ;
+
+import com.codelanx.commons.util.exception.Exceptions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * An append-only binary journal of economy transactions, backed by
+ * memory-mapped segment files. Every record is {@link #RECORD_SIZE} bytes:
+ * <br><br>
+ * {@code [uuid-most:8][uuid-least:8][delta:8][balance:8][plugin:24][timestamp:8]}
+ * <br><br>
+ * The plugin name is stored as a length byte followed by at most 23 chars
+ * truncated to single bytes. The timestamp is written last, so a record that
+ * was torn by a crash reads back as the end of the journal. Segments are
+ * preallocated and rolled over once full, and writing a record allocates
+ * nothing on the heap
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class TransactionJournal implements Closeable {
+
+    /** The size in bytes of a single record */
+    public static final int RECORD_SIZE = 64;
+    /** The default number of records held by a single segment (16MB) */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 18;
+    private static final int PLUGIN_OFFSET = 32;
+    private static final int PLUGIN_CHARS = 23;
+    private static final int TIMESTAMP_OFFSET = 56;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".bin";
+    private final File folder;
+    private final int segmentBytes;
+    private int segment;
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    /**
+     * Opens a journal in the given folder using
+     * {@link #DEFAULT_SEGMENT_RECORDS} records per segment
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param folder The folder to hold the segment files
+     * @throws IOException If the latest segment could not be opened
+     */
+    public TransactionJournal(File folder) throws IOException {
+        this(folder, TransactionJournal.DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Opens a journal in the given folder, continuing from the end of the
+     * latest existing segment
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param folder The folder to hold the segment files
+     * @param segmentRecords The number of records to hold in one segment
+     * @throws IOException If the latest segment could not be opened
+     */
+    public TransactionJournal(File folder, int segmentRecords) throws IOException {
+        Exceptions.isTrue(segmentRecords > 0 && segmentRecords <= Integer.MAX_VALUE / RECORD_SIZE,
+                "Invalid segment size: " + segmentRecords, IllegalArgumentException.class);
+        this.folder = folder;
+        this.segmentBytes = segmentRecords * RECORD_SIZE;
+        folder.mkdirs();
+        int[] existing = this.getSegments();
+        this.segment = existing.length > 0 ? existing[existing.length - 1] : 0;
+        this.open();
+        this.position = TransactionJournal.findEnd(this.buffer);
+    }
+
+    /**
+     * Appends a transaction to the journal
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The {@link UUID} of the account that changed
+     * @param delta The amount the balance changed by
+     * @param balance The resulting balance
+     * @param plugin The name of the plugin responsible, or {@code null}
+     * @throws IOException If a new segment could not be opened
+     */
+    public synchronized void record(UUID id, double delta, double balance, String plugin) throws IOException {
+        Exceptions.illegalState(this.buffer != null, "Journal is closed");
+        if (this.position + RECORD_SIZE > this.buffer.capacity()) {
+            this.roll();
+        }
+        MappedByteBuffer buf = this.buffer;
+        int pos = this.position;
+        buf.putLong(pos, id.getMostSignificantBits());
+        buf.putLong(pos + 8, id.getLeastSignificantBits());
+        buf.putDouble(pos + 16, delta);
+        buf.putDouble(pos + 24, balance);
+        int len = plugin == null ? 0 : Math.min(plugin.length(), PLUGIN_CHARS);
+        buf.put(pos + PLUGIN_OFFSET, (byte) len);
+        for (int i = 0; i < len; i++) {
+            buf.put(pos + PLUGIN_OFFSET + 1 + i, (byte) plugin.charAt(i));
+        }
+        buf.putLong(pos + TIMESTAMP_OFFSET, System.currentTimeMillis());
+        this.position = pos + RECORD_SIZE;
+    }
+
+    /**
+     * Visits every record in the journal, oldest first
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param visitor The {@link Visitor} to pass records to
+     * @throws IOException If a segment could not be read
+     */
+    public void replay(Visitor visitor) throws IOException {
+        this.replay(0, visitor);
+    }
+
+    /**
+     * Visits every record in the journal made at or after the given time,
+     * oldest first. Records appended while replaying may or may not be visited
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param since The earliest timestamp, in epoch milliseconds, to visit
+     * @param visitor The {@link Visitor} to pass records to
+     * @throws IOException If a segment could not be read
+     */
+    public void replay(long since, Visitor visitor) throws IOException {
+        char[] name = new char[PLUGIN_CHARS];
+        for (int seg : this.getSegments()) {
+            try (RandomAccessFile raf = new RandomAccessFile(this.getFile(seg), "r")) {
+                MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                for (int pos = 0; pos + RECORD_SIZE <= buf.capacity(); pos += RECORD_SIZE) {
+                    long time = buf.getLong(pos + TIMESTAMP_OFFSET);
+                    if (time == 0) {
+                        break;
+                    }
+                    if (time < since) {
+                        continue;
+                    }
+                    int len = buf.get(pos + PLUGIN_OFFSET);
+                    for (int i = 0; i < len; i++) {
+                        name[i] = (char) (buf.get(pos + PLUGIN_OFFSET + 1 + i) & 0xFF);
+                    }
+                    visitor.visit(new UUID(buf.getLong(pos), buf.getLong(pos + 8)),
+                            buf.getDouble(pos + 16), buf.getDouble(pos + 24),
+                            len == 0 ? null : new String(name, 0, len), time);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces any records not yet written by the operating system to disk
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public synchronized void flush() {
+        if (this.buffer != null) {
+            this.buffer.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the current segment. Further calls to
+     * {@link #record(UUID, double, double, String)} will fail
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException If the segment file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.buffer == null) {
+            return;
+        }
+        this.buffer.force();
+        this.buffer = null;
+        this.file.close();
+    }
+
+    /**
+     * Flushes the current segment and opens the next one
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException If the next segment could not be opened
+     */
+    private void roll() throws IOException {
+        this.close();
+        this.segment++;
+        this.open();
+        this.position = 0;
+    }
+
+    /**
+     * Maps the current segment file into memory
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException If the segment file could not be opened
+     */
+    private void open() throws IOException {
+        this.file = new RandomAccessFile(this.getFile(this.segment), "rw");
+        this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+    }
+
+    /**
+     * Returns the file for a segment number
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param segment The segment number
+     * @return The segment {@link File}
+     */
+    private File getFile(int segment) {
+        return new File(this.folder, String.format("%s%08d%s", PREFIX, segment, SUFFIX));
+    }
+
+    /**
+     * Returns the numbers of all segments in the journal folder, in ascending
+     * order
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The segment numbers
+     */
+    private int[] getSegments() {
+        String[] names = this.folder.list((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (names == null) {
+            return new int[0];
+        }
+        int[] back = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            try {
+                back[count] = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException ex) {
+                //not a segment of ours
+            }
+        }
+        back = Arrays.copyOf(back, count);
+        Arrays.sort(back);
+        return back;
+    }
+
+    /**
+     * Finds the offset of the first unwritten record in a segment. Records are
+     * written contiguously, so this is a binary search for the first zero
+     * timestamp
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param buf The segment buffer
+     * @return The byte offset to write the next record at
+     */
+    private static int findEnd(MappedByteBuffer buf) {
+        int low = 0;
+        int high = buf.capacity() / RECORD_SIZE;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buf.getLong(mid * RECORD_SIZE + TIMESTAMP_OFFSET) == 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low * RECORD_SIZE;
+    }
+
+    /**
+     * Receives records from {@link TransactionJournal#replay(Visitor)}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @FunctionalInterface
+    public static interface Visitor {
+
+        /**
+         * Called for each record in the journal
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param id The {@link UUID} of the account that changed
+         * @param delta The amount the balance changed by
+         * @param balance The resulting balance
+         * @param plugin The responsible plugin, or {@code null} if unknown
+         * @param timestamp The time of the transaction in epoch milliseconds
+         */
+        void visit(UUID id, double delta, double balance, String plugin, long timestamp);
+
+    }
+
+}
@@ -20,9 +20,11 @@
 package com.codelanx.codelanxlib.econ;
 
 import com.codelanx.codelanxlib.events.EconomyChangeEvent;
+import com.codelanx.codelanxlib.util.auth.PlayerIndex;
 import com.codelanx.commons.logging.Debugger;
 import net.milkbowl.vault.Vault;
 import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.Server;
@@ -31,12 +33,16 @@ import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.UUID;
 import java.util.logging.Level;
 
 /**
@@ -52,6 +58,8 @@ public final class VaultProxy implements InvocationHandler {
 
     /** The cached {@link Economy} class that Vault registered */
     private final Economy econ;
+    /** The journal to record transactions to, or {@code null} if disabled */
+    private static volatile TransactionJournal journal;
     /** The registered {@link CEconomy} classes listening to changes */
     private final static Set<CEconomy> econs = new LinkedHashSet<>();
     /** Known methods that do not need to be listened to */
@@ -101,18 +109,39 @@ public final class VaultProxy implements InvocationHandler {
      */
     @Override
     public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
-        Object back = m.invoke(this.econ, args);
+        Object back;
+        long start = System.nanoTime();
+        try {
+            back = m.invoke(this.econ, args);
+        } catch (InvocationTargetException ex) {
+            EconomyMetrics.record(m.getName(), System.nanoTime() - start, null, true);
+            throw ex;
+        }
+        EconomyMetrics.record(m.getName(), System.nanoTime() - start, back, false);
         if (args != null && args.length > 0 && !VaultProxy.blackListed.contains(m.getName())) {
-            OfflinePlayer o;
+            OfflinePlayer o = null;
+            UUID id;
             if (args[0] instanceof String) {
-                String s = (String) args[0];
-                o = Bukkit.getOfflinePlayer(s);
+                String name = (String) args[0];
+                id = PlayerIndex.getUUID(name);
+                if (id == null) {
+                    //unknown name, never block on a profile lookup. The change
+                    //is still journaled, but nobody is notified
+                    id = VaultProxy.getOfflineUUID(name);
+                } else {
+                    o = Bukkit.getOfflinePlayer(id);
+                }
             } else if (args[0] instanceof OfflinePlayer) {
                 o = (OfflinePlayer) args[0];
+                id = o.getUniqueId();
             } else {
                 return back;
             }
-            if (o.isOnline()) {
+            TransactionJournal j = VaultProxy.journal;
+            if (j != null && back instanceof EconomyResponse) {
+                VaultProxy.record(j, m.getName(), id, (EconomyResponse) back);
+            }
+            if (o != null && o.isOnline()) {
                 Player p = (Player) o;
                 double bal = this.econ.getBalance(p);
                 Bukkit.getServer().getPluginManager().callEvent(
@@ -127,6 +156,85 @@ public final class VaultProxy implements InvocationHandler {
         return back;
     }
 
+    /**
+     * Writes a successful withdrawal or deposit to the {@link TransactionJournal}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param j The {@link TransactionJournal} to write to
+     * @param method The name of the invoked {@link Economy} method
+     * @param id The {@link UUID} of the account whose balance changed
+     * @param r The {@link EconomyResponse} of the call
+     */
+    private static void record(TransactionJournal j, String method, UUID id, EconomyResponse r) {
+        if (!r.transactionSuccess()) {
+            return;
+        }
+        double delta;
+        switch (method) {
+            case "withdrawPlayer":
+                delta = -r.amount;
+                break;
+            case "depositPlayer":
+                delta = r.amount;
+                break;
+            default:
+                return;
+        }
+        try {
+            j.record(id, delta, r.balance, EconomyCaller.get());
+        } catch (IOException | RuntimeException ex) {
+            Debugger.error(ex, "Error writing to the economy transaction journal");
+        }
+    }
+
+    /**
+     * Returns the {@link UUID} Bukkit assigns to a name in offline mode, used
+     * to journal changes to accounts named by a player the
+     * {@link PlayerIndex} does not know
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The account name
+     * @return A {@link UUID} derived only from the name
+     */
+    private static UUID getOfflineUUID(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets the {@link TransactionJournal} that every successful withdrawal and
+     * deposit made through Vault is recorded to. Calls made through a
+     * {@link CEconomy} are attributed to its plugin, while calls made directly
+     * against Vault are recorded without one. Calls naming a player the
+     * {@link PlayerIndex} does not know are recorded under the name's offline
+     * mode {@link UUID}. The caller remains responsible for closing the
+     * journal
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param journal The {@link TransactionJournal} to use, or {@code null} to
+     *                stop recording
+     */
+    public static void setJournal(TransactionJournal journal) {
+        VaultProxy.journal = journal;
+    }
+
+    /**
+     * Returns the {@link TransactionJournal} transactions are recorded to
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The current {@link TransactionJournal}, or {@code null} if none
+     */
+    public static TransactionJournal getJournal() {
+        return VaultProxy.journal;
+    }
+
     /**
      * Proxies the Vault {@link Economy} class and replaces it with a
      * {@link VaultProxy} instance to handle method invocation, allowing
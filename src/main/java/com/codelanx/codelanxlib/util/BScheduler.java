@@ -23,10 +23,35 @@ import com.codelanx.codelanxlib.CodelanxLib;
 import com.codelanx.commons.util.Scheduler;
 import org.bukkit.Bukkit;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 
 public class BScheduler {
 
+    private static final Executor SYNC = r -> {
+        if (Bukkit.isPrimaryThread()) {
+            r.run();
+        } else {
+            Bukkit.getServer().getScheduler().scheduleSyncDelayedTask(CodelanxLib.get(), r);
+        }
+    };
+
+    /**
+     * Returns an {@link Executor} which runs tasks on Bukkit's main thread.
+     * Tasks submitted from the main thread are run immediately, others on the
+     * next server tick. This is useful for completing a
+     * {@link java.util.concurrent.CompletableFuture} back on the main thread,
+     * e.g. {@code future.thenAcceptAsync(callback, BScheduler.getSyncExecutor())}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return An {@link Executor} for the main thread
+     */
+    public static Executor getSyncExecutor() {
+        return BScheduler.SYNC;
+    }
+
     /**
      * Runs a task after a specified delay on Bukkit's main thread
      *
@@ -0,0 +1,579 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A thread-safe {@link UUIDMap}, split across independently locked segments
+ * so that threads working on different players rarely contend. Like a
+ * {@link java.util.concurrent.ConcurrentHashMap}, {@code null} keys and
+ * values are not permitted. Its key, value and entry views write through to
+ * the map, and their iterators are weakly consistent: each segment is copied
+ * as iteration reaches it, so they never throw
+ * {@link java.util.ConcurrentModificationException}, and may or may not
+ * reflect changes made during iteration
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ *
+ * @param <V> The type of values held
+ */
+public class ConcurrentUUIDMap<V> extends AbstractMap<UUID, V> implements ConcurrentMap<UUID, V> {
+
+    /** The number of segments, must be a power of two */
+    private static final int SEGMENTS = 32;
+    private final List<UUIDMap<V>> segments = new ArrayList<>(SEGMENTS);
+    private Set<UUID> keys;
+    private Collection<V> values;
+    private Set<Map.Entry<UUID, V>> entries;
+
+    /**
+     * Creates an empty map
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public ConcurrentUUIDMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map able to hold a number of keys without resizing
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param expected The expected number of keys
+     */
+    public ConcurrentUUIDMap(int expected) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments.add(new UUIDMap<>(expected / SEGMENTS));
+        }
+    }
+
+    /**
+     * Returns the value for a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The value, or {@code null} if there is none
+     */
+    public V get(long msb, long lsb) {
+        UUIDMap<V> s = this.segment(msb, lsb);
+        synchronized (s) {
+            return s.get(msb, lsb);
+        }
+    }
+
+    /**
+     * Sets the value for a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @param value The value to set
+     * @return The previous value, or {@code null} if there was none
+     */
+    public V put(long msb, long lsb, V value) {
+        Objects.requireNonNull(value);
+        UUIDMap<V> s = this.segment(msb, lsb);
+        synchronized (s) {
+            return s.put(msb, lsb, value);
+        }
+    }
+
+    /**
+     * Removes a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The removed value, or {@code null} if there was none
+     */
+    public V remove(long msb, long lsb) {
+        UUIDMap<V> s = this.segment(msb, lsb);
+        synchronized (s) {
+            return s.remove(msb, lsb);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        UUID id = (UUID) key;
+        return this.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param value {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V put(UUID key, V value) {
+        return this.put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V remove(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        UUID id = (UUID) key;
+        return this.remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param value {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V putIfAbsent(UUID key, V value) {
+        Objects.requireNonNull(value);
+        UUIDMap<V> s = this.segment(key);
+        synchronized (s) {
+            V old = s.get(key);
+            if (old == null) {
+                s.put(key, value);
+            }
+            return old;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param value {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof UUID) || value == null) {
+            return false;
+        }
+        UUIDMap<V> s = this.segment((UUID) key);
+        synchronized (s) {
+            if (value.equals(s.get(key))) {
+                s.remove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param oldValue {@inheritDoc}
+     * @param newValue {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public boolean replace(UUID key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        UUIDMap<V> s = this.segment(key);
+        synchronized (s) {
+            if (oldValue.equals(s.get(key))) {
+                s.put(key, newValue);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param value {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V replace(UUID key, V value) {
+        Objects.requireNonNull(value);
+        UUIDMap<V> s = this.segment(key);
+        synchronized (s) {
+            return s.containsKey(key) ? s.put(key, value) : null;
+        }
+    }
+
+    /**
+     * Computes the value while holding the lock for the key's segment, so the
+     * mapping function should be short and must not use this map
+     * <br><br> {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param mappingFunction {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V computeIfAbsent(UUID key, Function<? super UUID, ? extends V> mappingFunction) {
+        UUIDMap<V> s = this.segment(key);
+        synchronized (s) {
+            return s.computeIfAbsent(key, mappingFunction);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        int back = 0;
+        for (UUIDMap<V> s : this.segments) {
+            synchronized (s) {
+                back += s.size();
+            }
+        }
+        return back;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @Override
+    public void clear() {
+        for (UUIDMap<V> s : this.segments) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public Set<UUID> keySet() {
+        if (this.keys == null) {
+            this.keys = new AbstractSet<UUID>() {
+
+                @Override
+                public Iterator<UUID> iterator() {
+                    return new SegmentIterator<UUID>() {
+
+                        @Override
+                        protected UUID map(Map.Entry<UUID, V> entry) {
+                            return entry.getKey();
+                        }
+
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return ConcurrentUUIDMap.this.containsKey(o);
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    return ConcurrentUUIDMap.this.remove(o) != null;
+                }
+
+                @Override
+                public int size() {
+                    return ConcurrentUUIDMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ConcurrentUUIDMap.this.clear();
+                }
+
+            };
+        }
+        return this.keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public Collection<V> values() {
+        if (this.values == null) {
+            this.values = new AbstractCollection<V>() {
+
+                @Override
+                public Iterator<V> iterator() {
+                    return new SegmentIterator<V>() {
+
+                        @Override
+                        protected V map(Map.Entry<UUID, V> entry) {
+                            return entry.getValue();
+                        }
+
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ConcurrentUUIDMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ConcurrentUUIDMap.this.clear();
+                }
+
+            };
+        }
+        return this.values;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<UUID, V>> entrySet() {
+        if (this.entries == null) {
+            this.entries = new AbstractSet<Map.Entry<UUID, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<UUID, V>> iterator() {
+                    return new SegmentIterator<Map.Entry<UUID, V>>() {
+
+                        @Override
+                        protected Map.Entry<UUID, V> map(Map.Entry<UUID, V> entry) {
+                            return entry;
+                        }
+
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                    V value = ConcurrentUUIDMap.this.get(e.getKey());
+                    return value != null && value.equals(e.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                    return ConcurrentUUIDMap.this.remove(e.getKey(), e.getValue());
+                }
+
+                @Override
+                public int size() {
+                    return ConcurrentUUIDMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ConcurrentUUIDMap.this.clear();
+                }
+
+            };
+        }
+        return this.entries;
+    }
+
+    private UUIDMap<V> segment(UUID id) {
+        return this.segment(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    private UUIDMap<V> segment(long msb, long lsb) {
+        return this.segments.get(UUIDMap.hash(msb, lsb) >>> 27);
+    }
+
+    /**
+     * Iterates the map one segment at a time, copying each segment's entries
+     * under its lock when iteration reaches it. Removal and
+     * {@link Map.Entry#setValue(Object)} write through to the map
+     *
+     * @since 0.3.2
+     * @author 1Rogue
+     * @version 0.3.2
+     *
+     * @param <T> The type of element returned
+     */
+    private abstract class SegmentIterator<T> implements Iterator<T> {
+
+        private int segment;
+        private Iterator<Map.Entry<UUID, V>> current = Collections.emptyIterator();
+        private Map.Entry<UUID, V> last;
+
+        protected abstract T map(Map.Entry<UUID, V> entry);
+
+        @Override
+        public boolean hasNext() {
+            while (!this.current.hasNext() && this.segment < SEGMENTS) {
+                UUIDMap<V> s = ConcurrentUUIDMap.this.segments.get(this.segment++);
+                List<Map.Entry<UUID, V>> copy;
+                synchronized (s) {
+                    copy = new ArrayList<>(s.size());
+                    for (Map.Entry<UUID, V> ent : s.entrySet()) {
+                        copy.add(new WriteThroughEntry(ent.getKey(), ent.getValue()));
+                    }
+                }
+                this.current = copy.iterator();
+            }
+            return this.current.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.current.next();
+            return this.map(this.last);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentUUIDMap.this.remove(this.last.getKey());
+            this.last = null;
+        }
+
+    }
+
+    private final class WriteThroughEntry extends AbstractMap.SimpleEntry<UUID, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private WriteThroughEntry(UUID key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            ConcurrentUUIDMap.this.put(this.getKey(), value);
+            return super.setValue(value);
+        }
+
+    }
+
+}
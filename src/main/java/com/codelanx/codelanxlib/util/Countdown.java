@@ -19,20 +19,25 @@
  */
 package com.codelanx.codelanxlib.util;
 
+import com.codelanx.commons.logging.Debugger;
 import com.codelanx.commons.util.Scheduler;
 import com.codelanx.commons.util.time.TimePoint;
 import org.bukkit.Bukkit;
 import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.Objective;
 import org.bukkit.scoreboard.Scoreboard;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -43,52 +48,156 @@ import java.util.stream.Collectors;
  *
  * @since 0.1.0
  * @author 1Rogue
- * @version 0.1.0
+ * @version 0.3.2
  */
 public class Countdown {
 
+    /** Every running countdown, shared by a single display tick */
+    private static final Set<Run> ACTIVE = ConcurrentHashMap.newKeySet();
+    /** Whether the display tick is currently scheduled on the wheel */
+    private static final AtomicBoolean DRIVING = new AtomicBoolean();
+    /** Milliseconds between scoreboard updates and announcement checks */
+    private static final long UPDATE_INTERVAL = 500;
     private final Set<TimePoint> queue = new TreeSet<>();
     private final Set<Scoreboard> boards = new LinkedHashSet<>();
     private final Map<Scoreboard, String> formats = new HashMap<>();
     private String defFormat = "%d:%d:%s";
     private String announcement = "There are %s remaining!";
-    private long start = -1;
-    private volatile ScheduledFuture<?> task;
+    private volatile long start = -1;
+    private volatile Run run;
 
     /**
      * Starts a countdown timer that will run for as long as the specified
-     * {@code duration} argument.
+     * {@code duration} argument. Any countdown already in progress is
+     * cancelled first. Completion is scheduled on the shared
+     * {@link TimingWheel}, and the display is updated alongside every other
+     * running {@link Countdown} twice a second. The completion task itself
+     * runs on the {@link Scheduler} service, so it never holds up the wheel
      *
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      *
      * @param duration The amount of time in seconds to run the countdown
      * @param exec Task to run when countdown completes
      */
     public void start(long duration, Runnable exec) {
+        this.cancel();
         this.start = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
-        if (this.task != null) {
-            this.task.cancel(true);
+        Run r = new Run(new TreeSet<>(this.queue), exec);
+        this.run = r;
+        Countdown.ACTIVE.add(r);
+        r.expiry = TimingWheel.getDefault().schedule(() -> this.finish(r), duration, TimeUnit.SECONDS);
+        Countdown.drive();
+    }
+
+    /**
+     * Stops the countdown in progress, if any, without running its completion
+     * task
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public void cancel() {
+        Run r = this.run;
+        if (r != null) {
+            this.run = null;
+            Countdown.ACTIVE.remove(r);
+            if (r.expiry != null) {
+                r.expiry.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns whether or not this countdown is currently running
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if the countdown has been started and has neither
+     *         completed nor been cancelled
+     */
+    public boolean isRunning() {
+        return this.run != null;
+    }
+
+    /**
+     * Completes a run of this countdown, unless it was cancelled or replaced
+     * in the meantime. The completion task is handed off to the
+     * {@link Scheduler} service rather than run on the wheel's thread
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param r The {@link Run} which expired
+     */
+    private void finish(Run r) {
+        if (!Countdown.ACTIVE.remove(r)) {
+            return;
         }
-        final TreeSet<TimePoint> test = new TreeSet<>(this.queue);
-        this.task = Scheduler.getService().scheduleWithFixedDelay(() -> {
-            if (this.start - System.nanoTime() < 0) {
-                if (exec != null) {
-                    exec.run();
+        if (this.run == r) {
+            this.run = null;
+        }
+        if (r.exec != null) {
+            Scheduler.getService().execute(() -> {
+                try {
+                    r.exec.run();
+                } catch (RuntimeException ex) {
+                    Debugger.error(ex, "Error running countdown completion task");
                 }
-                if (this.task != null) {
-                    this.task.cancel(false);
+            });
+        }
+    }
+
+    /**
+     * Schedules the shared display tick if it is not already pending
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static void drive() {
+        if (Countdown.DRIVING.compareAndSet(false, true)) {
+            TimingWheel.getDefault().schedule(Countdown::tick, Countdown.UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Updates every running countdown at once. Titles and announcements are
+     * computed here, then applied in a single task on the main thread. A
+     * countdown which fails to update is logged and skipped, and the tick
+     * only stops rescheduling itself once no countdowns remain
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static void tick() {
+        try {
+            Map<Scoreboard, String> titles = new HashMap<>();
+            List<String> messages = new ArrayList<>();
+            for (Run r : Countdown.ACTIVE) {
+                try {
+                    r.update(titles, messages);
+                } catch (RuntimeException ex) {
+                    Debugger.error(ex, "Error updating countdown display");
                 }
             }
-            TimePoint now = TimePoint.getTimePoint(this.start - System.nanoTime());
-            TimePoint ref = TimePoint.findClosestAndWipe(test, now);
-            if (ref != null) {
-                //announce
-                Bukkit.broadcastMessage(String.format(this.announcement, ref.format(TimeUnit.SECONDS)));
+            if (!titles.isEmpty() || !messages.isEmpty()) {
+                BScheduler.getSyncExecutor().execute(() -> {
+                    messages.forEach(Bukkit::broadcastMessage);
+                    titles.forEach((b, title) -> {
+                        Objective o = b.getObjective(DisplaySlot.SIDEBAR);
+                        if (o != null) {
+                            o.setDisplayName(title);
+                        }
+                    });
+                });
+            }
+        } finally {
+            Countdown.DRIVING.set(false);
+            if (!Countdown.ACTIVE.isEmpty()) {
+                Countdown.drive();
             }
-            this.formatTimes(this.boards).entrySet().forEach(ent
-                    -> ent.getKey().getObjective(DisplaySlot.SIDEBAR).setDisplayName(ent.getValue()));
-        }, 0, 500, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -96,7 +205,7 @@ public class Countdown {
      * any scoreboards without a specified format
      *
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      *
      * @param boards The boards to create formats for
      * @return A {@link Map} of the passed Scoreboards mapped to outputs
@@ -112,7 +221,7 @@ public class Countdown {
                 Function.identity(),
                 b -> {
                     if (b != null && this.formats.containsKey(b)) {
-                        return this.formats.get(b);
+                        return this.formatReadable(now, this.formats.get(b));
                     } else {
                         return def;
                     }
@@ -315,4 +424,46 @@ public class Countdown {
         return this.defFormat;
     }
 
+    /**
+     * A single run of a {@link Countdown}, from {@link Countdown#start} until
+     * it completes or is cancelled
+     *
+     * @since 0.3.2
+     * @author 1Rogue
+     * @version 0.3.2
+     */
+    private final class Run {
+
+        private final TreeSet<TimePoint> announcements;
+        private final Runnable exec;
+        private volatile TimingWheel.Timeout expiry;
+
+        public Run(TreeSet<TimePoint> announcements, Runnable exec) {
+            this.announcements = announcements;
+            this.exec = exec;
+        }
+
+        /**
+         * Collects this run's pending announcement and scoreboard titles
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param titles The titles to apply, keyed by {@link Scoreboard}
+         * @param messages The announcements to broadcast
+         */
+        private void update(Map<Scoreboard, String> titles, List<String> messages) {
+            long left = Countdown.this.start - System.nanoTime();
+            if (left < 0) {
+                return;
+            }
+            TimePoint ref = TimePoint.findClosestAndWipe(this.announcements, TimePoint.getTimePoint(left));
+            if (ref != null) {
+                messages.add(String.format(Countdown.this.announcement, ref.format(TimeUnit.SECONDS)));
+            }
+            titles.putAll(Countdown.this.formatTimes(Countdown.this.boards));
+        }
+
+    }
+
 }
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util;
+
+import com.codelanx.commons.util.exception.Exceptions;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * A {@link UUID}-keyed map of {@code long} values held outside of the java
+ * heap, for data sets too large to keep as objects, such as balances or
+ * statistics for every player who has ever joined. Keys and values are stored
+ * as fixed-size slots in a direct {@link ByteBuffer}, so the garbage collector
+ * never scans them. The nil {@link UUID} is used to mark empty slots, and so is
+ * kept separately. This map is not thread-safe
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class OffHeapUUIDMap {
+
+    /** The number of bytes in a slot: the key halves followed by the value */
+    private static final int SLOT = 24;
+    /** The maximum number of slots a single direct buffer can address */
+    private static final int MAX_CAPACITY = 1 << 26;
+    private ByteBuffer table;
+    private int mask;
+    private int size;
+    private boolean hasNil;
+    private long nilValue;
+
+    /**
+     * Creates an empty map
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public OffHeapUUIDMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map able to hold a number of keys without resizing
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param expected The expected number of keys
+     */
+    public OffHeapUUIDMap(int expected) {
+        this.allocate(UUIDMap.capacityFor(expected));
+    }
+
+    /**
+     * Returns the value for a key
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The {@link UUID} to look up
+     * @param def The value to return if the key is not present
+     * @return The value, or {@code def} if there is none
+     */
+    public long get(UUID key, long def) {
+        return this.get(key.getMostSignificantBits(), key.getLeastSignificantBits(), def);
+    }
+
+    /**
+     * Returns the value for a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @param def The value to return if the key is not present
+     * @return The value, or {@code def} if there is none
+     */
+    public long get(long msb, long lsb, long def) {
+        if (msb == 0 && lsb == 0) {
+            return this.hasNil ? this.nilValue : def;
+        }
+        int i = this.find(msb, lsb);
+        return this.isEmpty(i) ? def : this.table.getLong(i * SLOT + 16);
+    }
+
+    /**
+     * Returns whether a key is present
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The {@link UUID} to look up
+     * @return {@code true} if the key has a value
+     */
+    public boolean containsKey(UUID key) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            return this.hasNil;
+        }
+        return !this.isEmpty(this.find(msb, lsb));
+    }
+
+    /**
+     * Sets the value for a key
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The {@link UUID} to set
+     * @param value The value to set
+     * @return {@code true} if the key was not already present
+     */
+    public boolean put(UUID key, long value) {
+        return this.put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * Sets the value for a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @param value The value to set
+     * @return {@code true} if the key was not already present
+     */
+    public boolean put(long msb, long lsb, long value) {
+        if (msb == 0 && lsb == 0) {
+            boolean added = !this.hasNil;
+            this.hasNil = true;
+            this.nilValue = value;
+            if (added) {
+                this.size++;
+            }
+            return added;
+        }
+        int i = this.find(msb, lsb);
+        if (!this.isEmpty(i)) {
+            this.table.putLong(i * SLOT + 16, value);
+            return false;
+        }
+        this.write(i, msb, lsb, value);
+        if (++this.size > (this.mask + 1) / 4 * 3) {
+            this.resize((this.mask + 1) << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds to the value for a key, treating a missing key as zero
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The {@link UUID} to update
+     * @param delta The amount to add
+     * @return The new value
+     */
+    public long add(UUID key, long delta) {
+        long value = this.get(key, 0) + delta;
+        this.put(key, value);
+        return value;
+    }
+
+    /**
+     * Removes a key
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The {@link UUID} to remove
+     * @return {@code true} if the key was present
+     */
+    public boolean remove(UUID key) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            boolean had = this.hasNil;
+            if (had) {
+                this.hasNil = false;
+                this.size--;
+            }
+            return had;
+        }
+        int i = this.find(msb, lsb);
+        if (this.isEmpty(i)) {
+            return false;
+        }
+        this.delete(i);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Returns the number of keys in this map
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes every key, keeping the current capacity
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public void clear() {
+        for (int i = 0; i <= this.mask; i++) {
+            this.write(i, 0, 0, 0);
+        }
+        this.hasNil = false;
+        this.size = 0;
+    }
+
+    /**
+     * Passes every key and value to a {@link Visitor}, without allocating a
+     * {@link UUID} for each key. The map must not be modified while visiting
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param visitor The {@link Visitor} to call
+     */
+    public void forEach(Visitor visitor) {
+        if (this.hasNil) {
+            visitor.visit(0, 0, this.nilValue);
+        }
+        for (int i = 0; i <= this.mask; i++) {
+            if (!this.isEmpty(i)) {
+                int at = i * SLOT;
+                visitor.visit(this.table.getLong(at), this.table.getLong(at + 8), this.table.getLong(at + 16));
+            }
+        }
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would go
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The index of the slot
+     */
+    private int find(long msb, long lsb) {
+        int i = UUIDMap.hash(msb, lsb) & this.mask;
+        while (!this.isEmpty(i)) {
+            int at = i * SLOT;
+            if (this.table.getLong(at) == msb && this.table.getLong(at + 8) == lsb) {
+                return i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return i;
+    }
+
+    private boolean isEmpty(int i) {
+        int at = i * SLOT;
+        return this.table.getLong(at) == 0 && this.table.getLong(at + 8) == 0;
+    }
+
+    private void write(int i, long msb, long lsb, long value) {
+        int at = i * SLOT;
+        this.table.putLong(at, msb);
+        this.table.putLong(at + 8, lsb);
+        this.table.putLong(at + 16, value);
+    }
+
+    /**
+     * Empties a slot, shifting back any later entries of the same probe run so
+     * that no tombstones are needed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param i The index of the slot to empty
+     */
+    private void delete(int i) {
+        int gap = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & this.mask;
+            if (this.isEmpty(j)) {
+                break;
+            }
+            int at = j * SLOT;
+            long msb = this.table.getLong(at);
+            long lsb = this.table.getLong(at + 8);
+            int home = UUIDMap.hash(msb, lsb) & this.mask;
+            if (((j - home) & this.mask) >= ((j - gap) & this.mask)) {
+                this.write(gap, msb, lsb, this.table.getLong(at + 16));
+                gap = j;
+            }
+        }
+        this.write(gap, 0, 0, 0);
+    }
+
+    private void resize(int capacity) {
+        ByteBuffer old = this.table;
+        int oldCapacity = this.mask + 1;
+        this.allocate(capacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            int at = i * SLOT;
+            long msb = old.getLong(at);
+            long lsb = old.getLong(at + 8);
+            if (msb != 0 || lsb != 0) {
+                this.write(this.find(msb, lsb), msb, lsb, old.getLong(at + 16));
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        Exceptions.isTrue(capacity <= MAX_CAPACITY, "OffHeapUUIDMap cannot exceed " + MAX_CAPACITY + " slots", IllegalStateException.class);
+        //Direct buffers are zeroed on allocation, which marks every slot empty
+        this.table = ByteBuffer.allocateDirect(capacity * SLOT);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Receives the entries of an {@link OffHeapUUIDMap}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @FunctionalInterface
+    public static interface Visitor {
+
+        /**
+         * Called for a single entry
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param msb The most significant bits of the {@link UUID}
+         * @param lsb The least significant bits of the {@link UUID}
+         * @param value The value for the key
+         */
+        public void visit(long msb, long lsb, long value);
+
+    }
+
+}
@@ -19,19 +19,24 @@
  */
 package com.codelanx.codelanxlib.util;
 
-import com.codelanx.codelanxlib.util.auth.UUIDFetcher;
+import com.codelanx.commons.util.Scheduler;
+import com.codelanx.codelanxlib.util.auth.PlayerIndex;
+import com.codelanx.codelanxlib.util.auth.UUIDCache;
+import com.codelanx.codelanxlib.util.auth.UUIDLookup;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
-import org.json.simple.parser.ParseException;
 
-import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 
 /**
  * Represents utility functions to simplify or clarify common operations
@@ -174,42 +179,120 @@ public final class Players {
 
     /**
      * Gets the most correct UUID for the {@link Player} in the least expensive
-     * way possible. Note however, if there is no UUID information about the
-     * player on the server (e.g., they never played before), it will send a
-     * blocking web request to Mojang's servers
+     * way possible, starting with the {@link PlayerIndex}. Note however, if
+     * there is no UUID information about the player on the server (e.g., they
+     * never played before) or in the {@link UUIDCache}, it will block on a web
+     * request to Mojang's servers, shared with any other lookups through
+     * {@link UUIDLookup}
      * 
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      * 
      * @param name The name of the {@link Player}
-     * @return The {@link UUID} for that player
+     * @return The {@link UUID} for that player, or {@code null} if no such
+     *         player exists
      */
     public static UUID getUUID(String name) {
         if (Bukkit.getServer().getOnlineMode()) {
+            UUID known = PlayerIndex.getUUID(name);
+            if (known != null) {
+                return known;
+            }
             OfflinePlayer op = Bukkit.getOfflinePlayer(name);
             if (op.hasPlayedBefore() || op.isOnline()) {
                 return op.getUniqueId();
             }
         }
         try {
-            return UUIDFetcher.getUUIDOf(name);
-        } catch (IOException | ParseException | InterruptedException ex) {
-            throw new IllegalArgumentException("Cannot determine UUID of player '" + name + "'", ex);
+            return UUIDLookup.lookup(name).join();
+        } catch (CompletionException ex) {
+            throw new IllegalArgumentException("Cannot determine UUID of player '" + name + "'", ex.getCause());
+        }
+    }
+
+    /**
+     * Gets the most correct UUID for the {@link Player} without blocking.
+     * Cached names complete immediately, while local player data is checked
+     * on the {@link Scheduler} service before requesting the name through
+     * {@link UUIDLookup}
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @see Players#getUUID(String)
+     * @param name The name of the {@link Player}
+     * @return A {@link CompletableFuture} of the player's {@link UUID}, or of
+     *         {@code null} if no such player exists
+     */
+    public static CompletableFuture<UUID> getUUIDAsync(String name) {
+        if (UUIDCache.contains(name) || !Bukkit.getServer().getOnlineMode()) {
+            return UUIDLookup.lookup(name);
+        }
+        UUID known = PlayerIndex.getUUID(name);
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
         }
+        return CompletableFuture.supplyAsync(() -> {
+            OfflinePlayer op = Bukkit.getOfflinePlayer(name);
+            return op.hasPlayedBefore() || op.isOnline() ? op.getUniqueId() : null;
+        }, Scheduler.getService()).thenCompose(id -> id != null
+                ? CompletableFuture.completedFuture(id)
+                : UUIDLookup.lookup(name));
+    }
+
+    /**
+     * Gets the most correct UUID for the {@link Player} without blocking, and
+     * passes it to a callback on Bukkit's main thread
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @see Players#getUUIDAsync(String)
+     * @param name The name of the {@link Player}
+     * @param callback The {@link Consumer} to run on the main thread with the
+     *                 player's {@link UUID}, or {@code null} if no such
+     *                 player exists
+     * @return A {@link CompletableFuture} completed after the callback runs
+     */
+    public static CompletableFuture<Void> getUUIDAsync(String name, Consumer<? super UUID> callback) {
+        return Players.getUUIDAsync(name).thenAcceptAsync(callback, BScheduler.getSyncExecutor());
+    }
+
+    /**
+     * Gets the {@link UUID}s of many players without blocking. Cached names
+     * are answered immediately, and the rest are requested from Mojang in
+     * bulk through {@link UUIDLookup} and then cached
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param names The names of the players
+     * @return A {@link CompletableFuture} of each supplied name mapped to its
+     *         {@link UUID}, or to {@code null} if no such player exists
+     */
+    public static CompletableFuture<Map<String, UUID>> getUUIDsAsync(Collection<String> names) {
+        return UUIDLookup.lookupAll(names);
     }
 
     /**
      * Returns whether or not a player by the specified {@code name} parameter
      * has played on this server before, or is currently online, thus resulting
-     * in having a correct {@link UUID}
+     * in having a correct {@link UUID}. Once the {@link PlayerIndex} is loaded,
+     * this never reads player data
      * 
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      * 
      * @param name The player name to look for
      * @return {@code true} if the UUID will be correct 
      */
     public static boolean hasCorrectOfflineUUID(String name) {
+        if (PlayerIndex.contains(name)) {
+            return true;
+        }
+        if (PlayerIndex.isLoaded()) {
+            return Bukkit.getPlayerExact(name) != null;
+        }
         OfflinePlayer op = Bukkit.getOfflinePlayer(name);
         return op.hasPlayedBefore() || op.isOnline();
     }
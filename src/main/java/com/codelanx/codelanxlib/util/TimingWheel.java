@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util;
+
+import com.codelanx.commons.logging.Debugger;
+import com.codelanx.commons.util.Scheduler;
+import com.codelanx.commons.util.exception.Exceptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel, which runs many delayed tasks from a single repeating
+ * task on the {@link Scheduler} service. Scheduling and cancelling a task are
+ * both constant time, at the cost of tasks only firing on tick boundaries
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class TimingWheel {
+
+    /** The shared wheel, ticking every 100 milliseconds */
+    private static final TimingWheel DEFAULT = new TimingWheel(100, TimeUnit.MILLISECONDS, 1024);
+    private final long tick;
+    private final Timeout[] wheel;
+    private final int mask;
+    private long ticks;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Creates a new wheel. The wheel does not tick until a task is scheduled
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param tick The duration of a single tick
+     * @param unit The {@link TimeUnit} of the {@code tick} parameter
+     * @param buckets The number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(long tick, TimeUnit unit, int buckets) {
+        Exceptions.isTrue(tick > 0 && buckets > 0, "Tick duration and bucket count must be positive", IllegalArgumentException.class);
+        this.tick = unit.toNanos(tick);
+        int size = Integer.highestOneBit(buckets);
+        if (size < buckets) {
+            size <<= 1;
+        }
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the wheel shared across CodelanxLib, which ticks every 100
+     * milliseconds
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The shared {@link TimingWheel}
+     */
+    public static TimingWheel getDefault() {
+        return TimingWheel.DEFAULT;
+    }
+
+    /**
+     * Schedules a task to run once after a delay. The task runs on the
+     * {@link Scheduler} service thread that ticks this wheel, and should not
+     * block
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param task The {@link Runnable} to execute
+     * @param delay The time to wait before execution
+     * @param unit The {@link TimeUnit} of the {@code delay} parameter
+     * @return A {@link Timeout} which can cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long delayTicks = Math.max(1, (unit.toNanos(delay) + this.tick - 1) / this.tick);
+        Timeout t = new Timeout(task);
+        synchronized (this) {
+            int bucket = (int) ((this.ticks + delayTicks) & this.mask);
+            t.rounds = (delayTicks - 1) / this.wheel.length;
+            t.next = this.wheel[bucket];
+            this.wheel[bucket] = t;
+            if (this.task == null) {
+                this.task = Scheduler.getService().scheduleAtFixedRate(this::advance, this.tick, this.tick, TimeUnit.NANOSECONDS);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Stops the wheel from ticking. Pending tasks are kept, and the wheel
+     * starts again once another task is scheduled
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick, running any tasks that are due. Tasks
+     * are collected under the lock and run outside of it
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private void advance() {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (this) {
+            this.ticks++;
+            int bucket = (int) (this.ticks & this.mask);
+            Timeout prev = null;
+            Timeout t = this.wheel[bucket];
+            while (t != null) {
+                Timeout next = t.next;
+                boolean remove = t.cancelled;
+                if (!remove && t.rounds-- <= 0) {
+                    due.add(t);
+                    remove = true;
+                }
+                if (remove) {
+                    if (prev == null) {
+                        this.wheel[bucket] = next;
+                    } else {
+                        prev.next = next;
+                    }
+                    t.next = null;
+                } else {
+                    prev = t;
+                }
+                t = next;
+            }
+        }
+        for (Timeout t : due) {
+            if (t.cancelled) {
+                continue;
+            }
+            try {
+                t.task.run();
+            } catch (RuntimeException ex) {
+                Debugger.error(ex, "Error running timing wheel task");
+            }
+        }
+    }
+
+    /**
+     * A handle to a task scheduled on a {@link TimingWheel}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private volatile boolean cancelled;
+        private long rounds;
+        private Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Prevents the task from running if it has not already started. The
+         * task is unlinked from the wheel the next time its bucket is visited
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        /**
+         * Returns whether this task was cancelled
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return {@code true} if {@link Timeout#cancel()} was called
+         */
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+    }
+
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A {@link Map} keyed by {@link UUID}, which stores each key as its two
+ * {@code long} halves in open-addressed arrays. Unlike a {@link java.util.HashMap},
+ * no entry objects are created, and keys are not retained, so per-player maps
+ * of many thousands of players create far less garbage. Keys can also be
+ * given as their halves directly, such as those read by
+ * {@link com.codelanx.codelanxlib.util.auth.UUIDFetcher#fromBytes(byte[])},
+ * without creating a {@link UUID} at all
+ * <br><br>
+ * This map is not thread-safe, see {@link ConcurrentUUIDMap}. Iterators
+ * are fail-fast, and support removal
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ *
+ * @param <V> The type of values held
+ */
+public class UUIDMap<V> extends AbstractMap<UUID, V> {
+
+    private static final int MIN_CAPACITY = 16;
+    private long[] msbs;
+    private long[] lsbs;
+    private Object[] values;
+    private boolean[] used;
+    private int size;
+    private int modCount;
+    private Set<Map.Entry<UUID, V>> entries;
+
+    /**
+     * Creates an empty map
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public UUIDMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map able to hold a number of keys without resizing
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param expected The expected number of keys
+     */
+    public UUIDMap(int expected) {
+        this.allocate(UUIDMap.capacityFor(expected));
+    }
+
+    /**
+     * Returns the value for a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The value, or {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long msb, long lsb) {
+        int i = this.find(msb, lsb);
+        return this.used[i] ? (V) this.values[i] : null;
+    }
+
+    /**
+     * Returns whether a key given as its two halves is present
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return {@code true} if the key is present
+     */
+    public boolean containsKey(long msb, long lsb) {
+        return this.used[this.find(msb, lsb)];
+    }
+
+    /**
+     * Sets the value for a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @param value The value to set
+     * @return The previous value, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long msb, long lsb, V value) {
+        int i = this.find(msb, lsb);
+        if (this.used[i]) {
+            V old = (V) this.values[i];
+            this.values[i] = value;
+            return old;
+        }
+        this.insert(i, msb, lsb, value);
+        return null;
+    }
+
+    /**
+     * Removes a key given as its two halves
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The removed value, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long msb, long lsb) {
+        int i = this.find(msb, lsb);
+        if (!this.used[i]) {
+            return null;
+        }
+        V old = (V) this.values[i];
+        this.delete(i);
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        UUID id = (UUID) key;
+        return this.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof UUID)) {
+            return false;
+        }
+        UUID id = (UUID) key;
+        return this.containsKey(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param value {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V put(UUID key, V value) {
+        return this.put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public V remove(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        UUID id = (UUID) key;
+        return this.remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * Finds the slot for the key once, rather than once to check and once to
+     * insert
+     * <br><br> {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key {@inheritDoc}
+     * @param mappingFunction {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(UUID key, Function<? super UUID, ? extends V> mappingFunction) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int i = this.find(msb, lsb);
+        if (this.used[i] && this.values[i] != null) {
+            return (V) this.values[i];
+        }
+        int mods = this.modCount;
+        V value = mappingFunction.apply(key);
+        if (value == null) {
+            return null;
+        }
+        if (mods != this.modCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (this.used[i]) {
+            this.values[i] = value;
+        } else {
+            this.insert(i, msb, lsb, value);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @Override
+    public void clear() {
+        this.allocate(MIN_CAPACITY);
+        this.size = 0;
+        this.modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<UUID, V>> entrySet() {
+        if (this.entries == null) {
+            this.entries = new AbstractSet<Map.Entry<UUID, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<UUID, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return UUIDMap.this.size;
+                }
+
+            };
+        }
+        return this.entries;
+    }
+
+    /**
+     * Spreads the bits of a {@link UUID} into a hash. Version 4
+     * {@link UUID UUIDs} are already random, but offline mode ones are not
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The hash
+     */
+    static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the table size needed to hold a number of keys
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param expected The number of keys
+     * @return A power of two at least {@code expected / 0.75}
+     */
+    static int capacityFor(int expected) {
+        int needed = (int) Math.min(1 << 30, Math.max(MIN_CAPACITY, (long) expected * 4 / 3 + 1));
+        int back = Integer.highestOneBit(needed);
+        return back < needed ? back << 1 : back;
+    }
+
+    /**
+     * Returns the slot holding a key, or the empty slot where it belongs
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param msb The most significant bits of the {@link UUID}
+     * @param lsb The least significant bits of the {@link UUID}
+     * @return The slot index
+     */
+    private int find(long msb, long lsb) {
+        int mask = this.used.length - 1;
+        int i = UUIDMap.hash(msb, lsb) & mask;
+        while (this.used[i] && (this.msbs[i] != msb || this.lsbs[i] != lsb)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void insert(int i, long msb, long lsb, V value) {
+        this.msbs[i] = msb;
+        this.lsbs[i] = lsb;
+        this.values[i] = value;
+        this.used[i] = true;
+        this.modCount++;
+        if (++this.size * 4L > this.used.length * 3L) {
+            this.resize(this.used.length << 1);
+        }
+    }
+
+    /**
+     * Empties a slot, shifting back any later keys in its probe sequence so
+     * that no tombstones are needed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param i The slot to empty
+     */
+    private void delete(int i) {
+        int mask = this.used.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!this.used[j]) {
+                break;
+            }
+            int home = UUIDMap.hash(this.msbs[j], this.lsbs[j]) & mask;
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                continue;
+            }
+            this.msbs[i] = this.msbs[j];
+            this.lsbs[i] = this.lsbs[j];
+            this.values[i] = this.values[j];
+            i = j;
+        }
+        this.used[i] = false;
+        this.values[i] = null;
+        this.size--;
+        this.modCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        long[] oldMsbs = this.msbs;
+        long[] oldLsbs = this.lsbs;
+        Object[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+        this.allocate(capacity);
+        for (int k = 0; k < oldUsed.length; k++) {
+            if (oldUsed[k]) {
+                int i = this.find(oldMsbs[k], oldLsbs[k]);
+                this.msbs[i] = oldMsbs[k];
+                this.lsbs[i] = oldLsbs[k];
+                this.values[i] = oldValues[k];
+                this.used[i] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.msbs = new long[capacity];
+        this.lsbs = new long[capacity];
+        this.values = new Object[capacity];
+        this.used = new boolean[capacity];
+    }
+
+    /**
+     * Walks the table starting just after an empty slot. No probe sequence
+     * crosses an empty slot, so when a removal shifts keys back, they only
+     * move from slots not yet visited into slots at or after the removed one,
+     * and no key is skipped or returned twice
+     *
+     * @since 0.3.2
+     * @author 1Rogue
+     * @version 0.3.2
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<UUID, V>> {
+
+        private final int mask = UUIDMap.this.used.length - 1;
+        private final int start;
+        private int expected = UUIDMap.this.modCount;
+        private int next;
+        private int last = -1;
+
+        private EntryIterator() {
+            boolean[] used = UUIDMap.this.used;
+            int empty = 0;
+            while (used[empty]) {
+                empty++;
+            }
+            this.start = empty;
+            this.advance();
+        }
+
+        private void advance() {
+            boolean[] used = UUIDMap.this.used;
+            do {
+                this.next++;
+            } while (this.next <= this.mask && !used[this.slot(this.next)]);
+        }
+
+        private int slot(int offset) {
+            return (this.start + offset) & this.mask;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next <= this.mask;
+        }
+
+        @Override
+        public Map.Entry<UUID, V> next() {
+            if (UUIDMap.this.modCount != this.expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.next;
+            this.advance();
+            return new Entry(this.slot(this.last));
+        }
+
+        @Override
+        public void remove() {
+            if (this.last < 0) {
+                throw new IllegalStateException();
+            }
+            if (UUIDMap.this.modCount != this.expected) {
+                throw new ConcurrentModificationException();
+            }
+            int slot = this.slot(this.last);
+            UUIDMap.this.delete(slot);
+            this.expected = UUIDMap.this.modCount;
+            if (UUIDMap.this.used[slot]) {
+                //a later key was shifted into the removed slot
+                this.next = this.last;
+            }
+            this.last = -1;
+        }
+
+    }
+
+    private final class Entry extends AbstractMap.SimpleEntry<UUID, V> {
+
+        private static final long serialVersionUID = 1L;
+        private final int slot;
+
+        @SuppressWarnings("unchecked")
+        private Entry(int slot) {
+            super(new UUID(UUIDMap.this.msbs[slot], UUIDMap.this.lsbs[slot]), (V) UUIDMap.this.values[slot]);
+            this.slot = slot;
+        }
+
+        @Override
+        public V setValue(V value) {
+            UUIDMap.this.values[this.slot] = value;
+            return super.setValue(value);
+        }
+
+    }
+
+}
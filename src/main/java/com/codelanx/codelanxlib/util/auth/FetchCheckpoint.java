@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * An append-only record of the lookups a long-running conversion has already
+ * completed, so that an interrupted conversion can resume where it stopped.
+ * Work is split into numbered units, such as a single request, and each unit
+ * is written with all of its results once it completes. A unit cut short by a
+ * crash is discarded when the file is next opened. Units may be written from
+ * several threads
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class FetchCheckpoint implements Closeable {
+
+    private static final int MAGIC = 0x434C4643; //CLFC
+    private final File file;
+    private final BitSet done = new BitSet();
+    /** The results of each completed unit, kept apart as units may repeat names */
+    private final Map<Integer, Map<String, UserInfo>> results = new LinkedHashMap<>();
+    private final DataOutputStream out;
+
+    /**
+     * Opens a checkpoint file, loading any completed units. A file written for
+     * different work is discarded
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The checkpoint file
+     * @param fingerprint A value identifying the work, such as the hash of the
+     *                    names being converted
+     * @throws IOException If the file could not be read or written
+     */
+    public FetchCheckpoint(File file, int fingerprint) throws IOException {
+        this.file = file;
+        long valid = 0;
+        if (file.isFile()) {
+            valid = this.load(Files.readAllBytes(file.toPath()), fingerprint);
+        }
+        if (valid > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(valid);
+            }
+            this.out = new DataOutputStream(new FileOutputStream(file, true));
+        } else {
+            this.out = new DataOutputStream(new FileOutputStream(file, false));
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(fingerprint);
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Returns whether a unit was completed in a previous run
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param unit The unit number
+     * @return {@code true} if the unit's results were loaded
+     */
+    public boolean isDone(int unit) {
+        return this.done.get(unit);
+    }
+
+    /**
+     * Passes every result loaded from a previous run to a consumer, once for
+     * each completed unit it belongs to
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param consumer The {@link BiConsumer} to accept each looked up name and
+     *                 its {@link UserInfo}, or {@code null} if it was not found
+     */
+    public void forEach(BiConsumer<String, UserInfo> consumer) {
+        this.results.values().forEach(read -> read.forEach(consumer));
+    }
+
+    /**
+     * Records a completed unit
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param unit The unit number
+     * @param results The looked up names mapped to their {@link UserInfo}, or
+     *                {@code null} for names which were not found
+     * @throws IOException If the record could not be written
+     */
+    public synchronized void write(int unit, Map<String, UserInfo> results) throws IOException {
+        this.out.writeInt(unit);
+        this.out.writeInt(results.size());
+        for (Map.Entry<String, UserInfo> ent : results.entrySet()) {
+            this.out.writeUTF(ent.getKey());
+            UserInfo info = ent.getValue();
+            this.out.writeBoolean(info != null);
+            if (info != null) {
+                this.out.writeUTF(info.getName());
+                this.out.writeLong(info.getUUID().getMostSignificantBits());
+                this.out.writeLong(info.getUUID().getLeastSignificantBits());
+            }
+        }
+        this.out.flush();
+    }
+
+    /**
+     * Closes and removes the checkpoint file, once all work is complete
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException If the file could not be closed or deleted
+     */
+    public synchronized void delete() throws IOException {
+        this.close();
+        Files.deleteIfExists(this.file.toPath());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * Reads every complete unit from the raw file contents
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param data The file contents
+     * @param fingerprint The expected fingerprint
+     * @return The length of the valid portion of the file, or 0 if the file
+     *         does not belong to this work
+     */
+    private long load(byte[] data, int fingerprint) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        long valid = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != fingerprint) {
+                return 0;
+            }
+            valid = 8;
+            while (in.available() > 0) {
+                int unit = in.readInt();
+                int count = in.readInt();
+                Map<String, UserInfo> read = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String query = in.readUTF();
+                    UserInfo info = null;
+                    if (in.readBoolean()) {
+                        info = new UserInfo(in.readUTF(), new UUID(in.readLong(), in.readLong()));
+                    }
+                    read.put(query, info);
+                }
+                this.done.set(unit);
+                this.results.put(unit, read);
+                valid = data.length - in.available();
+            }
+        } catch (EOFException ex) {
+            //a unit was cut short, keep everything before it
+            return valid;
+        } catch (IOException ex) {
+            return 0;
+        }
+        return valid;
+    }
+
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import org.apache.commons.lang.Validate;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Converts a data file keyed by player names into one keyed by {@link UUID}s,
+ * without ever holding the whole file in memory. The input is read a chunk of
+ * records at a time, the names in each chunk are resolved together through
+ * the {@link UUIDCache} and {@link UUIDFetcher}, and the converted chunk is
+ * appended to the output before a checkpoint is recorded. If the migration is
+ * interrupted, running it again with the same files resumes after the last
+ * completed chunk. Records whose name cannot be resolved are written
+ * unchanged to a separate {@code .unresolved} file next to the output
+ * <br><br>
+ * Two formats are understood. In {@link Format#FLAT} files, every line is a
+ * record starting with the name, followed by a separator and the value. In
+ * {@link Format#YAML} files, every top-level key is a name, and the record is
+ * that line along with all of the indented lines beneath it. In both formats,
+ * only the name itself is replaced, and the rest of the record is copied as
+ * is. Lines which are not records, such as comments, are copied unchanged
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class NameMigration {
+
+    private static final int MAGIC = 0x434C4E4D; //CLNM
+    private final File input;
+    private final File output;
+    private final File unresolved;
+    private final Format format;
+    private File checkpoint;
+    private char separator = ':';
+    private int chunkSize = 1000;
+    private UUIDFetcher.Progress progress;
+    private String endpoint = UUIDFetcher.DEFAULT_ENDPOINT;
+
+    /**
+     * Constructor. Assigns parameters to fields
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param input The name-keyed file to read
+     * @param output The file to write {@link UUID}-keyed records to
+     * @param format The {@link Format} of both files
+     */
+    public NameMigration(File input, File output, Format format) {
+        Validate.notNull(input, "Input file cannot be null");
+        Validate.notNull(output, "Output file cannot be null");
+        Validate.notNull(format, "Format cannot be null");
+        this.input = input;
+        this.output = output;
+        this.unresolved = new File(output.getPath() + ".unresolved");
+        this.checkpoint = new File(output.getPath() + ".checkpoint");
+        this.format = format;
+    }
+
+    /**
+     * Sets the character between the name and value of a
+     * {@link Format#FLAT} record. Defaults to {@code ':'}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param separator The separating character
+     * @return This {@link NameMigration}
+     */
+    public NameMigration setSeparator(char separator) {
+        this.separator = separator;
+        return this;
+    }
+
+    /**
+     * Sets the number of records converted between checkpoints. Larger chunks
+     * make fewer, larger lookups at the cost of memory. Defaults to 1000
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param chunkSize The number of records per chunk
+     * @return This {@link NameMigration}
+     */
+    public NameMigration setChunkSize(int chunkSize) {
+        Validate.isTrue(chunkSize > 0, "Chunk size must be positive");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the root URL of the profile API used to resolve names
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @see UUIDFetcher#setEndpoint(String)
+     * @param endpoint The root URL, without a trailing slash
+     * @return This {@link NameMigration}
+     */
+    public NameMigration setEndpoint(String endpoint) {
+        Validate.notNull(endpoint, "Endpoint cannot be null");
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    /**
+     * Sets the file checkpoints are recorded in. Defaults to the output file
+     * with a {@code .checkpoint} extension
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param checkpoint The checkpoint file
+     * @return This {@link NameMigration}
+     */
+    public NameMigration setCheckpoint(File checkpoint) {
+        Validate.notNull(checkpoint, "Checkpoint file cannot be null");
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    /**
+     * Sets a {@link UUIDFetcher.Progress} notified after every chunk. The
+     * total passed to it is the size of the input in kilobytes, the
+     * processed amount is the number of kilobytes read so far, and the failed
+     * amount is the number of unresolved records
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param progress The {@link UUIDFetcher.Progress} to notify
+     * @return This {@link NameMigration}
+     */
+    public NameMigration setProgress(UUIDFetcher.Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * Returns the file that records with unresolvable names are written to
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The unresolved records file
+     */
+    public File getUnresolvedFile() {
+        return this.unresolved;
+    }
+
+    /**
+     * Runs the migration, resuming from the checkpoint file if one exists for
+     * the same input. Without a checkpoint, any existing output is replaced.
+     * The checkpoint is deleted once the migration completes
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The total number of records converted
+     * @throws IOException If a file could not be read or written, or names
+     *                     could not be resolved
+     * @throws InterruptedException If the thread is interrupted while waiting
+     *                              on a lookup
+     */
+    public long run() throws IOException, InterruptedException {
+        long fingerprint = this.input.length() ^ (this.input.lastModified() * 31);
+        State state = this.readCheckpoint(fingerprint);
+        try (FileInputStream fin = new FileInputStream(this.input);
+                FileOutputStream out = new FileOutputStream(this.output, true);
+                FileOutputStream bad = new FileOutputStream(this.unresolved, true)) {
+            fin.getChannel().position(state.read);
+            out.getChannel().truncate(state.written);
+            bad.getChannel().truncate(state.skipped);
+            Writer outWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            Writer badWriter = new BufferedWriter(new OutputStreamWriter(bad, StandardCharsets.UTF_8));
+            LineInput in = new LineInput(fin, state.read);
+            List<Record> chunk = new ArrayList<>();
+            Record next = this.readRecord(in, null);
+            while (next != null) {
+                Record current = next;
+                next = this.readRecord(in, current);
+                chunk.add(current);
+                if (chunk.size() >= this.chunkSize || next == null) {
+                    this.convert(chunk, outWriter, badWriter, state);
+                    outWriter.flush();
+                    badWriter.flush();
+                    out.getChannel().force(false);
+                    bad.getChannel().force(false);
+                    state.read = next == null ? in.position() : next.start;
+                    state.written = out.getChannel().size();
+                    state.skipped = bad.getChannel().size();
+                    this.writeCheckpoint(state, fingerprint);
+                    chunk.clear();
+                    if (this.progress != null) {
+                        this.progress.update((int) (state.read >> 10), (int) (this.input.length() >> 10),
+                                (int) state.failed);
+                    }
+                }
+            }
+        }
+        Files.deleteIfExists(this.checkpoint.toPath());
+        return state.converted;
+    }
+
+    /**
+     * Resolves the names of a chunk and writes each record to the relevant
+     * output
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param chunk The {@link Record Records} to convert
+     * @param out The {@link Writer} for converted records
+     * @param bad The {@link Writer} for unresolved records
+     * @param state The {@link State} to count converted records in
+     * @throws IOException If the names could not be resolved or written
+     * @throws InterruptedException If interrupted while resolving names
+     */
+    private void convert(List<Record> chunk, Writer out, Writer bad, State state) throws IOException, InterruptedException {
+        Set<String> names = new LinkedHashSet<>();
+        chunk.stream().filter(r -> r.name != null).forEach(r -> names.add(r.name));
+        Map<String, UUID> ids = this.resolve(names);
+        for (Record r : chunk) {
+            if (r.name == null) {
+                out.write(r.text);
+                continue;
+            }
+            UUID id = ids.get(r.name.toLowerCase(Locale.ENGLISH));
+            if (id == null) {
+                bad.write(r.text);
+                state.failed++;
+            } else {
+                out.write(id.toString());
+                out.write(r.text, r.keyEnd, r.text.length() - r.keyEnd);
+                state.converted++;
+            }
+        }
+    }
+
+    /**
+     * Resolves names through the {@link UUIDCache}, fetching and caching any
+     * which are not cached. Strings which are not valid Minecraft names are
+     * never requested
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param names The names to resolve
+     * @return A {@link Map} of lowercase names to their {@link UUID}
+     * @throws IOException If the names could not be requested
+     * @throws InterruptedException If interrupted while requesting names
+     */
+    private Map<String, UUID> resolve(Set<String> names) throws IOException, InterruptedException {
+        Map<String, UUID> back = new HashMap<>();
+        List<String> fetch = new ArrayList<>();
+        for (String name : names) {
+            if (UUIDCache.contains(name)) {
+                back.put(name.toLowerCase(Locale.ENGLISH), UUIDCache.get(name));
+            } else if (NameMigration.isValidName(name)) {
+                fetch.add(name);
+            }
+        }
+        if (!fetch.isEmpty()) {
+            try {
+                new UUIDFetcher(fetch).setEndpoint(this.endpoint).call().forEach((name, id) -> back.put(name.toLowerCase(Locale.ENGLISH), id));
+            } catch (ParseException ex) {
+                throw new IOException("Invalid response while resolving names", ex);
+            }
+            fetch.forEach(name -> UUIDCache.put(name, back.get(name.toLowerCase(Locale.ENGLISH))));
+        }
+        return back;
+    }
+
+    private static boolean isValidName(String name) {
+        int len = name.length();
+        if (len == 0 || len > 16) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next record. For {@link Format#YAML}, this reads one line
+     * ahead so that the indented lines of a key are kept with it
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param in The {@link LineInput} to read from
+     * @param previous The last record read, whose lookahead line is used
+     * @return The next {@link Record}, or {@code null} at the end of input
+     * @throws IOException If the input could not be read
+     */
+    private Record readRecord(LineInput in, Record previous) throws IOException {
+        String line;
+        long start;
+        if (previous != null && previous.lookahead != null) {
+            line = previous.lookahead;
+            start = previous.lookaheadStart;
+        } else {
+            start = in.position();
+            line = in.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        Record r = new Record(start);
+        StringBuilder text = new StringBuilder(line);
+        int sep = this.format == Format.YAML ? NameMigration.yamlKeyEnd(line) : line.indexOf(this.separator);
+        if (sep > 0) {
+            r.keyEnd = sep;
+            r.name = NameMigration.unquote(line.substring(0, sep).trim());
+            if (r.name.isEmpty()) {
+                r.name = null;
+            }
+        }
+        if (this.format == Format.YAML && r.name != null) {
+            while (true) {
+                long at = in.position();
+                String more = in.readLine();
+                if (more == null || NameMigration.yamlKeyEnd(more) > 0 || (!more.isEmpty() && more.charAt(0) == '#')) {
+                    r.lookahead = more;
+                    r.lookaheadStart = at;
+                    break;
+                }
+                text.append('\n').append(more);
+            }
+        }
+        r.text = text.append('\n').toString();
+        return r;
+    }
+
+    /**
+     * Returns where the key of a top-level YAML mapping ends
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param line The line to check
+     * @return The index of the {@code ':'} after the key, or -1 if the line
+     *         is not a top-level key
+     */
+    private static int yamlKeyEnd(String line) {
+        if (line.isEmpty()) {
+            return -1;
+        }
+        char first = line.charAt(0);
+        if (first == ' ' || first == '\t' || first == '#' || first == '-' || first == '.') {
+            return -1;
+        }
+        int from = 0;
+        if (first == '\'' || first == '"') {
+            from = line.indexOf(first, 1);
+            if (from < 0) {
+                return -1;
+            }
+        }
+        return line.indexOf(':', from);
+    }
+
+    private static String unquote(String key) {
+        int len = key.length();
+        if (len >= 2 && (key.charAt(0) == '\'' || key.charAt(0) == '"') && key.charAt(len - 1) == key.charAt(0)) {
+            return key.substring(1, len - 1);
+        }
+        return key;
+    }
+
+    private State readCheckpoint(long fingerprint) throws IOException {
+        State back = new State();
+        if (this.checkpoint.isFile()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(this.checkpoint))) {
+                if (in.readInt() == MAGIC && in.readLong() == fingerprint) {
+                    back.read = in.readLong();
+                    back.written = in.readLong();
+                    back.skipped = in.readLong();
+                    back.converted = in.readLong();
+                    back.failed = in.readLong();
+                }
+            }
+        }
+        return back;
+    }
+
+    private void writeCheckpoint(State state, long fingerprint) throws IOException {
+        File temp = new File(this.checkpoint.getPath() + ".tmp");
+        try (FileOutputStream fout = new FileOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(fout)) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeLong(state.read);
+            out.writeLong(state.written);
+            out.writeLong(state.skipped);
+            out.writeLong(state.converted);
+            out.writeLong(state.failed);
+            out.flush();
+            fout.getFD().sync();
+        }
+        Files.move(temp.toPath(), this.checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The layout of a data file being migrated
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static enum Format {
+        /** One {@code name<separator>value} record per line */
+        FLAT,
+        /** A YAML mapping with player names as its top-level keys */
+        YAML
+    }
+
+    /**
+     * The progress of a migration, as stored in its checkpoint
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static final class State {
+
+        /** Bytes of input consumed */
+        private long read;
+        /** Bytes of converted output written */
+        private long written;
+        /** Bytes of unresolved output written */
+        private long skipped;
+        /** Records converted */
+        private long converted;
+        /** Records which could not be resolved */
+        private long failed;
+
+    }
+
+    private static final class Record {
+
+        private final long start;
+        private String name;
+        private int keyEnd;
+        private String text;
+        private String lookahead;
+        private long lookaheadStart;
+
+        private Record(long start) {
+            this.start = start;
+        }
+
+    }
+
+    /**
+     * Reads UTF-8 lines from a stream while tracking the exact byte offset,
+     * so that a checkpoint can seek straight back to a record
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static final class LineInput {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[65536];
+        private byte[] line = new byte[256];
+        private int pos;
+        private int limit;
+        private long position;
+
+        private LineInput(InputStream in, long position) {
+            this.in = in;
+            this.position = position;
+        }
+
+        private long position() {
+            return this.position;
+        }
+
+        private String readLine() throws IOException {
+            int len = 0;
+            boolean any = false;
+            while (true) {
+                if (this.pos >= this.limit) {
+                    this.limit = this.in.read(this.buffer);
+                    this.pos = 0;
+                    if (this.limit <= 0) {
+                        this.limit = 0;
+                        break;
+                    }
+                }
+                any = true;
+                byte b = this.buffer[this.pos++];
+                this.position++;
+                if (b == '\n') {
+                    break;
+                }
+                if (len == this.line.length) {
+                    this.line = Arrays.copyOf(this.line, len * 2);
+                }
+                this.line[len++] = b;
+            }
+            if (!any) {
+                return null;
+            }
+            if (len > 0 && this.line[len - 1] == '\r') {
+                len--;
+            }
+            return new String(this.line, 0, len, StandardCharsets.UTF_8);
+        }
+
+    }
+
+}
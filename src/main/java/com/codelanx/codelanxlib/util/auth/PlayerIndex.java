@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.codelanx.codelanxlib.util.ConcurrentUUIDMap;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory index between the names and {@link UUID UUIDs} of players
+ * known to this server, answering either direction without touching player
+ * data or making a web request. Names are only ever learned from players
+ * joining and from player data already on the server, never from
+ * {@link Bukkit#getOfflinePlayer(String)}. Both directions share a single
+ * {@link UserInfo} per player, which is replaced when the player is seen with
+ * a new name
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class PlayerIndex {
+
+    /** Lowercase player names mapped to the player holding them */
+    private static final Map<String, UserInfo> names = new ConcurrentHashMap<>();
+    /** Player {@link UUID UUIDs} mapped to the player's last known name */
+    private static final Map<UUID, UserInfo> ids = new ConcurrentUUIDMap<>();
+    private static volatile boolean loaded = false;
+
+    private PlayerIndex() {
+    }
+
+    /**
+     * Returns the {@link UUID} of the player last seen with a name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return The player's {@link UUID}, or {@code null} if the name is unknown
+     */
+    public static UUID getUUID(String name) {
+        UserInfo info = PlayerIndex.get(name);
+        return info == null ? null : info.getUUID();
+    }
+
+    /**
+     * Returns the last known name of a player
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The player {@link UUID}
+     * @return The player's name, or {@code null} if the player is unknown
+     */
+    public static String getName(UUID id) {
+        UserInfo info = PlayerIndex.get(id);
+        return info == null ? null : info.getName();
+    }
+
+    /**
+     * Returns the {@link UserInfo} of the player last seen with a name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return The relevant {@link UserInfo}, or {@code null} if the name is
+     *         unknown
+     */
+    public static UserInfo get(String name) {
+        return PlayerIndex.names.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Returns the {@link UserInfo} of a player
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The player {@link UUID}
+     * @return The relevant {@link UserInfo}, or {@code null} if the player is
+     *         unknown
+     */
+    public static UserInfo get(UUID id) {
+        return PlayerIndex.ids.get(id);
+    }
+
+    /**
+     * Returns whether a player with a name is known to this server
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return {@code true} if the name is indexed
+     */
+    public static boolean contains(String name) {
+        return PlayerIndex.get(name) != null;
+    }
+
+    /**
+     * Returns whether every player with data on this server has been indexed.
+     * Until then, a name missing from the index may still belong to a player
+     * who has played before
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if the index is complete
+     */
+    public static boolean isLoaded() {
+        return PlayerIndex.loaded;
+    }
+
+    /**
+     * Returns the number of indexed players
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of players
+     */
+    public static int size() {
+        return PlayerIndex.ids.size();
+    }
+
+    /**
+     * Records the current name of a player, dropping any previous name. If
+     * another player last held the name, that player is now only reachable by
+     * {@link UUID}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name
+     * @param id The player {@link UUID}
+     */
+    public static void update(String name, UUID id) {
+        PlayerIndex.update(name, id, true);
+    }
+
+    /**
+     * Indexes every player with data on this server, without overwriting the
+     * names of players seen since. This reads the server's player data, and
+     * should not be run on the main thread
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    static void loadKnownPlayers() {
+        for (OfflinePlayer op : Bukkit.getOfflinePlayers()) {
+            String name = op.getName();
+            if (name != null) {
+                PlayerIndex.update(name, op.getUniqueId(), false);
+            }
+        }
+        PlayerIndex.loaded = true;
+    }
+
+    private static synchronized void update(String name, UUID id, boolean replace) {
+        UserInfo prev = PlayerIndex.ids.get(id);
+        if (prev != null && (!replace || prev.getName().equals(name))) {
+            return;
+        }
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        UserInfo info = new UserInfo(name, id);
+        PlayerIndex.ids.put(id, info);
+        if (prev != null) {
+            PlayerIndex.names.remove(prev.getName().toLowerCase(Locale.ENGLISH), prev);
+        }
+        PlayerIndex.names.put(lower, info);
+    }
+
+}
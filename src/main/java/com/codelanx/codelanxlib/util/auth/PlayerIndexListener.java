@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.codelanx.codelanxlib.CodelanxLib;
+import com.codelanx.codelanxlib.listener.SubListener;
+import com.codelanx.commons.util.Reflections;
+import com.codelanx.commons.util.Scheduler;
+import com.codelanx.commons.util.exception.Exceptions;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+/**
+ * Keeps the {@link PlayerIndex} current with the names of joining players
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class PlayerIndexListener extends SubListener<CodelanxLib> {
+
+    /**
+     * Indexes the known players in the background
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param plugin The {@link CodelanxLib} plugin
+     */
+    public PlayerIndexListener(CodelanxLib plugin) {
+        super(plugin);
+        Exceptions.illegalInvocation(Reflections.accessedFrom(CodelanxLib.class));
+        Scheduler.runAsyncTask(PlayerIndex::loadKnownPlayers, 0);
+    }
+
+    /**
+     * Indexes the name of a joining player, replacing any previous name
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param event The relevant {@link PlayerJoinEvent}
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player p = event.getPlayer();
+        PlayerIndex.update(p.getName(), p.getUniqueId());
+    }
+
+}
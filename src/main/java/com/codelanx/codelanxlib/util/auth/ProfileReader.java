@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * A streaming reader for Mojang profile responses, which reads characters
+ * straight from the response and emits each (name, {@link UUID}) pair as soon
+ * as its profile ends. Unlike building a full JSON tree, memory use does not
+ * grow with the size of the response. Both a single profile object and an
+ * array of profiles are accepted, and any other fields are skipped
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class ProfileReader {
+
+    private final Reader in;
+    private final char[] buffer = new char[4096];
+    private final StringBuilder text = new StringBuilder(32);
+    private int pos;
+    private int limit;
+    private int offset;
+
+    /**
+     * Constructor. Reads from the passed {@link Reader}, which is not closed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param in The {@link Reader} of the response body
+     */
+    public ProfileReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads every profile in the response
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param consumer The {@link BiConsumer} to accept each profile's name and
+     *                 {@link UUID}
+     * @throws IOException If the response could not be read
+     * @throws ParseException If the response is not valid JSON
+     */
+    public void read(BiConsumer<String, UUID> consumer) throws IOException, ParseException {
+        int c = this.skipWhitespace();
+        if (c == '[') {
+            this.next();
+            if (this.skipWhitespace() == ']') {
+                this.next();
+                return;
+            }
+            do {
+                if (this.skipWhitespace() == '{') {
+                    this.readProfile(consumer);
+                } else {
+                    this.skipValue();
+                }
+            } while (this.separator(']'));
+        } else if (c == '{') {
+            this.readProfile(consumer);
+        } else if (c >= 0) {
+            throw this.unexpected(c);
+        }
+    }
+
+    private void readProfile(BiConsumer<String, UUID> consumer) throws IOException, ParseException {
+        this.expect('{');
+        String name = null;
+        UUID id = null;
+        if (this.skipWhitespace() == '}') {
+            this.next();
+            return;
+        }
+        do {
+            this.skipWhitespace();
+            String key = this.readString();
+            this.skipWhitespace();
+            this.expect(':');
+            int c = this.skipWhitespace();
+            if (c == '"' && "name".equals(key)) {
+                name = this.readString();
+            } else if (c == '"' && "id".equals(key)) {
+                id = this.readId();
+            } else {
+                this.skipValue();
+            }
+        } while (this.separator('}'));
+        if (name != null && id != null) {
+            consumer.accept(name, id);
+        }
+    }
+
+    /**
+     * Reads the separator after an element of an array or object
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param close The character closing the array or object
+     * @return {@code true} if another element follows
+     * @throws IOException If the response could not be read
+     * @throws ParseException If neither a comma nor the closing character is
+     *                        next
+     */
+    private boolean separator(char close) throws IOException, ParseException {
+        int c = this.skipWhitespace();
+        this.next();
+        if (c == ',') {
+            return true;
+        } else if (c == close) {
+            return false;
+        }
+        throw this.unexpected(c);
+    }
+
+    private void skipValue() throws IOException, ParseException {
+        int c = this.skipWhitespace();
+        switch (c) {
+            case '"':
+                this.readString();
+                return;
+            case '{':
+                this.next();
+                if (this.skipWhitespace() == '}') {
+                    this.next();
+                    return;
+                }
+                do {
+                    this.skipWhitespace();
+                    this.readString();
+                    this.skipWhitespace();
+                    this.expect(':');
+                    this.skipValue();
+                } while (this.separator('}'));
+                return;
+            case '[':
+                this.next();
+                if (this.skipWhitespace() == ']') {
+                    this.next();
+                    return;
+                }
+                do {
+                    this.skipValue();
+                } while (this.separator(']'));
+                return;
+            default:
+                if (c < 0 || !ProfileReader.isLiteral(c)) {
+                    throw this.unexpected(c);
+                }
+                while (ProfileReader.isLiteral(this.peek())) {
+                    this.next();
+                }
+        }
+    }
+
+    private String readString() throws IOException, ParseException {
+        this.expect('"');
+        this.text.setLength(0);
+        while (true) {
+            int c = this.next();
+            if (c == '"') {
+                return this.text.toString();
+            } else if (c == '\\') {
+                c = this.next();
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int h = this.next();
+                            int d = Character.digit(h, 16);
+                            if (d < 0) {
+                                throw this.unexpected(h);
+                            }
+                            c = (c << 4) | d;
+                        }
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        break;
+                    default:
+                        throw this.unexpected(c);
+                }
+            } else if (c < 0) {
+                throw this.unexpected(c);
+            }
+            this.text.append((char) c);
+        }
+    }
+
+    /**
+     * Reads a {@link UUID} string, in either Mojang's undashed form or the
+     * standard dashed form
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The read {@link UUID}
+     * @throws IOException If the response could not be read
+     * @throws ParseException If the string is not a {@link UUID}
+     */
+    private UUID readId() throws IOException, ParseException {
+        int start = this.offset + this.pos;
+        String id = this.readString();
+        try {
+            if (id.length() == 32) {
+                return new UUID(Long.parseUnsignedLong(id.substring(0, 16), 16),
+                        Long.parseUnsignedLong(id.substring(16), 16));
+            }
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException ex) {
+            throw new ParseException(start, ParseException.ERROR_UNEXPECTED_TOKEN, id);
+        }
+    }
+
+    private void expect(char expected) throws IOException, ParseException {
+        int c = this.next();
+        if (c != expected) {
+            throw this.unexpected(c);
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = this.peek();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            this.pos++;
+            c = this.peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (this.pos >= this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.pos];
+    }
+
+    private int next() throws IOException {
+        if (this.pos >= this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.pos++];
+    }
+
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.pos = 0;
+        this.limit = Math.max(0, this.in.read(this.buffer));
+        return this.limit > 0;
+    }
+
+    private ParseException unexpected(int c) {
+        int at = this.offset + this.pos - 1;
+        return c < 0
+                ? new ParseException(at, ParseException.ERROR_UNEXPECTED_TOKEN, null)
+                : new ParseException(at, ParseException.ERROR_UNEXPECTED_CHAR, (char) c);
+    }
+
+    private static boolean isLiteral(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'E';
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.codelanx.commons.util.exception.Exceptions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket which adapts its rate to a remote service's rate limiting.
+ * Every successful request nudges the rate back up towards its maximum, while
+ * a rate-limited response halves it and pauses every caller until the
+ * service's {@code Retry-After} period has passed. Instances are thread-safe
+ * and meant to be shared by every request made to the same service
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class RateLimiter {
+
+    private static final long DEFAULT_BACKOFF = TimeUnit.SECONDS.toNanos(30);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(10);
+    private final double maxRate;
+    private final double minRate;
+    private final int burst;
+    private double rate;
+    private double tokens;
+    private long refilled = System.nanoTime();
+    private long pausedUntil = this.refilled;
+    private long backoff = DEFAULT_BACKOFF;
+
+    /**
+     * Creates a new limiter starting at its maximum rate
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param permitsPerSecond The maximum number of requests per second
+     * @param burst The number of requests that may be made at once after the
+     *              limiter has been idle
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        Exceptions.isTrue(permitsPerSecond > 0 && burst > 0, "Rate and burst must be positive", IllegalArgumentException.class);
+        this.maxRate = permitsPerSecond;
+        this.minRate = Math.min(permitsPerSecond, 1D / 60);
+        this.burst = burst;
+        this.rate = permitsPerSecond;
+        this.tokens = burst;
+    }
+
+    /**
+     * Blocks until a request may be made
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                this.refill(now);
+                if (now - this.pausedUntil < 0) {
+                    wait = this.pausedUntil - now;
+                } else if (this.tokens >= 1) {
+                    this.tokens--;
+                    return;
+                } else {
+                    wait = (long) ((1 - this.tokens) / this.rate * 1_000_000_000D);
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(wait, 1));
+        }
+    }
+
+    /**
+     * Reports a successful request, slowly raising the rate back towards its
+     * maximum and resetting the backoff period
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public synchronized void onSuccess() {
+        this.rate = Math.min(this.maxRate, this.rate + this.maxRate / 20);
+        this.backoff = DEFAULT_BACKOFF;
+    }
+
+    /**
+     * Reports a rate-limited request, halving the rate and pausing all
+     * callers. Without a {@code Retry-After} period, the pause starts at 30
+     * seconds and doubles with each consecutive rate-limited request, up to
+     * 10 minutes
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param retryAfter The period given by the service, or a negative number
+     *                   if none was given
+     * @param unit The {@link TimeUnit} of the {@code retryAfter} parameter
+     */
+    public synchronized void onRateLimited(long retryAfter, TimeUnit unit) {
+        long now = System.nanoTime();
+        this.refill(now);
+        this.rate = Math.max(this.minRate, this.rate / 2);
+        this.tokens = 0;
+        long pause;
+        if (retryAfter >= 0) {
+            pause = unit.toNanos(retryAfter);
+        } else {
+            pause = this.backoff;
+            this.backoff = Math.min(MAX_BACKOFF, this.backoff * 2);
+        }
+        if (now + pause - this.pausedUntil > 0) {
+            this.pausedUntil = now + pause;
+        }
+    }
+
+    /**
+     * Returns the current number of requests allowed per second
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The current rate
+     */
+    public synchronized double getRate() {
+        return this.rate;
+    }
+
+    private void refill(long now) {
+        this.tokens = Math.min(this.burst, this.tokens + (now - this.refilled) * this.rate / 1_000_000_000D);
+        this.refilled = now;
+    }
+
+}
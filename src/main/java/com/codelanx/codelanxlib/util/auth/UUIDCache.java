@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.codelanx.codelanxlib.util.Players;
+import com.codelanx.commons.logging.Debugger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A two-tier cache of player names to their {@link UUID}, consulted by
+ * {@link Players#getUUID(String)} before any request is made to Mojang. Recent
+ * names are held in a small in-memory LRU, backed by a memory-mapped store on
+ * disk which survives restarts. Names which Mojang reported as not existing
+ * are cached as well, for a shorter period, so that they are not requested
+ * again either
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class UUIDCache {
+
+    private static final int MEMORY_CAPACITY = 4096;
+    private static final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(256, 0.75F, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UUIDCache.Entry> eldest) {
+            return this.size() > UUIDCache.MEMORY_CAPACITY;
+        }
+
+    };
+    private static volatile UUIDStore disk;
+    private static volatile long foundTTL = TimeUnit.DAYS.toMillis(7);
+    private static volatile long missingTTL = TimeUnit.HOURS.toMillis(1);
+
+    private UUIDCache() {
+    }
+
+    /**
+     * Opens the on-disk tier of the cache. Until this is called, names are
+     * only cached in memory
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The file to store names in
+     * @throws IOException If the file could not be opened
+     */
+    public static synchronized void open(File file) throws IOException {
+        UUIDCache.close();
+        UUIDCache.disk = new UUIDStore(file);
+    }
+
+    /**
+     * Flushes and closes the on-disk tier of the cache, if open
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static synchronized void close() {
+        UUIDStore store = UUIDCache.disk;
+        if (store != null) {
+            UUIDCache.disk = null;
+            try {
+                store.close();
+            } catch (IOException ex) {
+                Debugger.error(ex, "Error closing UUID cache");
+            }
+        }
+    }
+
+    /**
+     * Returns the cached {@link UUID} for a player name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return The cached {@link UUID}, or {@code null} if the name is not
+     *         cached or was cached as not existing
+     */
+    public static UUID get(String name) {
+        Entry e = UUIDCache.lookup(name);
+        return e == null ? null : e.getUUID();
+    }
+
+    /**
+     * Returns whether a name is cached, either with its {@link UUID} or as a
+     * name which does not exist. A name for which this returns {@code true}
+     * does not need to be requested from Mojang
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return {@code true} if the name is cached
+     */
+    public static boolean contains(String name) {
+        return UUIDCache.lookup(name) != null;
+    }
+
+    /**
+     * Caches the {@link UUID} of a player name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @param id The {@link UUID} of the player, or {@code null} if the name is
+     *           known not to exist
+     */
+    public static void put(String name, UUID id) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        Entry e = new Entry(id, System.currentTimeMillis() + (id == null ? UUIDCache.missingTTL : UUIDCache.foundTTL));
+        synchronized (UUIDCache.memory) {
+            UUIDCache.memory.put(key, e);
+        }
+        UUIDStore store = UUIDCache.disk;
+        if (store != null) {
+            try {
+                store.put(key, e);
+            } catch (IOException ex) {
+                Debugger.error(ex, "Error writing to UUID cache");
+            }
+        }
+    }
+
+    /**
+     * Sets how long names are cached for. Defaults to 7 days for existing
+     * names, and 1 hour for names which do not exist
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param found The time to cache a name with a {@link UUID}
+     * @param missing The time to cache a name which does not exist
+     * @param unit The {@link TimeUnit} of both durations
+     */
+    public static void setTimeToLive(long found, long missing, TimeUnit unit) {
+        UUIDCache.foundTTL = unit.toMillis(found);
+        UUIDCache.missingTTL = unit.toMillis(missing);
+    }
+
+    /**
+     * Finds the unexpired entry for a name in either tier, promoting entries
+     * found on disk into memory
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return The relevant {@link Entry}, or {@code null} if not cached
+     */
+    private static Entry lookup(String name) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        long now = System.currentTimeMillis();
+        synchronized (UUIDCache.memory) {
+            Entry e = UUIDCache.memory.get(key);
+            if (e != null) {
+                if (e.getExpiry() > now) {
+                    return e;
+                }
+                UUIDCache.memory.remove(key);
+            }
+        }
+        UUIDStore store = UUIDCache.disk;
+        if (store == null) {
+            return null;
+        }
+        Entry e = store.get(key);
+        if (e == null || e.getExpiry() <= now) {
+            return null;
+        }
+        synchronized (UUIDCache.memory) {
+            UUIDCache.memory.put(key, e);
+        }
+        return e;
+    }
+
+    /**
+     * A cached lookup result
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    static final class Entry {
+
+        private final UUID id;
+        private final long expires;
+
+        Entry(UUID id, long expires) {
+            this.id = id;
+            this.expires = expires;
+        }
+
+        /**
+         * Returns the cached {@link UUID}
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The {@link UUID}, or {@code null} if the name does not exist
+         */
+        UUID getUUID() {
+            return this.id;
+        }
+
+        /**
+         * Returns when this entry expires
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The expiry time, in epoch milliseconds
+         */
+        long getExpiry() {
+            return this.expires;
+        }
+
+    }
+
+}
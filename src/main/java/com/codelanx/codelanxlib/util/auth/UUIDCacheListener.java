@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.codelanx.codelanxlib.CodelanxLib;
+import com.codelanx.codelanxlib.listener.SubListener;
+import com.codelanx.commons.util.Reflections;
+import com.codelanx.commons.util.exception.Exceptions;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+/**
+ * Warms the {@link UUIDCache} with the names of joining players
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class UUIDCacheListener extends SubListener<CodelanxLib> {
+
+    /**
+     * Constructor. Ensures this is only created by {@link CodelanxLib}
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param plugin The {@link CodelanxLib} plugin
+     */
+    public UUIDCacheListener(CodelanxLib plugin) {
+        super(plugin);
+        Exceptions.illegalInvocation(Reflections.accessedFrom(CodelanxLib.class));
+    }
+
+    /**
+     * Caches the name of a joining player. Offline mode {@link java.util.UUID
+     * UUIDs} are not Mojang's, and so are not cached
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param event The relevant {@link PlayerJoinEvent}
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        if (Bukkit.getServer().getOnlineMode()) {
+            Player p = event.getPlayer();
+            UUIDCache.put(p.getName(), p.getUniqueId());
+        }
+    }
+
+}
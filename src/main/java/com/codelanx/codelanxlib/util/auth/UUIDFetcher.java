@@ -16,29 +16,58 @@
  */
 package com.codelanx.codelanxlib.util.auth;
 
+import com.codelanx.commons.logging.Debugger;
+import com.codelanx.commons.util.Scheduler;
 import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang.Validate;
-import org.bukkit.Bukkit;
 import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
 
 /**
  * All credit to evilmidget38! A small bit of cleanup for Java 8. This class can
@@ -52,11 +81,18 @@ import java.util.logging.Logger;
  */
 public class UUIDFetcher implements Callable<Map<String, UUID>> {
 
+    /** The root of Mojang's API, used unless another endpoint is set */
+    public static final String DEFAULT_ENDPOINT = "https://api.mojang.com";
     private static final double PROFILES_PER_REQUEST = 100;
-    private static final String PROFILE_URL = "https://api.mojang.com/profiles/minecraft";
-    private final JSONParser jsonParser = new JSONParser();
+    private static final int MAX_ATTEMPTS = 5;
+    private static final RateLimiter DEFAULT_LIMITER = new RateLimiter(10, 10);
     private final List<String> names;
     private final boolean rateLimiting;
+    private String endpoint = UUIDFetcher.DEFAULT_ENDPOINT;
+    private int concurrency = 4;
+    private RateLimiter limiter = UUIDFetcher.DEFAULT_LIMITER;
+    private File checkpoint;
+    private ExecutorService executor;
 
     /**
      * Makes a copy of the names to be retrieved
@@ -86,6 +122,90 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         this(names, true);
     }
 
+    /**
+     * Sets the root URL of the profile API, such as a local server for
+     * testing. Defaults to {@link UUIDFetcher#DEFAULT_ENDPOINT}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param endpoint The root URL, without a trailing slash
+     * @return This {@link UUIDFetcher}
+     */
+    public UUIDFetcher setEndpoint(String endpoint) {
+        Validate.notNull(endpoint, "Endpoint cannot be null");
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of batch requests in flight at once. Defaults
+     * to 4
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param concurrency The number of concurrent requests
+     * @return This {@link UUIDFetcher}
+     */
+    public UUIDFetcher setConcurrency(int concurrency) {
+        Validate.isTrue(concurrency > 0, "Concurrency must be positive");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the {@link RateLimiter} used when rate limiting. By default, every
+     * {@link UUIDFetcher} shares one limiter, as Mojang limits requests per
+     * address rather than per connection
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param limiter The {@link RateLimiter} to use
+     * @return This {@link UUIDFetcher}
+     */
+    public UUIDFetcher setRateLimiter(RateLimiter limiter) {
+        Validate.notNull(limiter, "Rate limiter cannot be null");
+        this.limiter = limiter;
+        return this;
+    }
+
+    /**
+     * Sets the {@link ExecutorService} that batch requests run on. By default,
+     * each call creates its own pool of threads and shuts it down afterwards.
+     * A shared executor is left running, and at most the configured
+     * concurrency of requests are submitted to it at once
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param executor The {@link ExecutorService} to use, or {@code null} for
+     *                 a pool per call
+     * @return This {@link UUIDFetcher}
+     */
+    public UUIDFetcher setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets a file to record completed requests in. If a conversion of the
+     * same names is interrupted, calling it again resumes from the file
+     * instead of requesting every name again. The file is deleted once the
+     * conversion completes
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param checkpoint The checkpoint file, or {@code null} for none
+     * @return This {@link UUIDFetcher}
+     */
+    public UUIDFetcher setCheckpoint(File checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
     /**
      * Makes a request to mojang's servers of a sublist of at most 100 player's
      * names.
@@ -104,12 +224,34 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         return this.callWithProgessOutput(false, null, null);
     }
 
+    /**
+     * Runs {@link UUIDFetcher#call()} on the {@link Scheduler} service
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return A {@link CompletableFuture} of player names to their
+     *         {@link UUID}s, completed exceptionally with the cause of any
+     *         failure
+     */
+    public CompletableFuture<Map<String, UUID>> callAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.call();
+            } catch (IOException | ParseException | InterruptedException ex) {
+                throw new CompletionException(ex);
+            }
+        }, Scheduler.getService());
+    }
+
     /**
      * Makes a request to mojang's servers of a sublist of at most 100 player's
-     * names. Additionally can provide progress outputs
+     * names. Additionally can provide progress outputs. Batches are requested
+     * concurrently, paced by the {@link RateLimiter}, and any batch which
+     * fails is retried up to 5 times before the conversion fails
      * 
      * @since 0.0.1
-     * @version 0.1.0
+     * @version 0.3.2
      * 
      * @param output Whether or not to print output
      * @param log The {@link Logger} to print to
@@ -127,41 +269,165 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         int completed = 0;
         int failed = 0;
         int requests = (int) Math.ceil(this.names.size() / UUIDFetcher.PROFILES_PER_REQUEST);
-        for (int i = 0; i < requests; i++) {
-            List<String> request = names.subList(i * 100, Math.min((i + 1) * 100, this.names.size()));
-            String body = JSONArray.toJSONString(request);
-            HttpURLConnection connection = UUIDFetcher.createConnection();
-            UUIDFetcher.writeBody(connection, body);
-            if (connection.getResponseCode() == 429 && this.rateLimiting) {
-                String out = "[UUIDFetcher] Rate limit hit! Waiting 10 minutes until continuing conversion...";
-                if (log != null) {
-                    log.warning(out);
+        FetchCheckpoint check = null;
+        if (this.checkpoint != null) {
+            check = new FetchCheckpoint(this.checkpoint, this.names.hashCode());
+            int[] resumed = new int[2];
+            check.forEach((name, info) -> {
+                if (info == null) {
+                    resumed[1]++;
                 } else {
-                    Bukkit.getLogger().warning(out);
+                    uuidMap.put(info.getName(), info.getUUID());
+                    resumed[0]++;
                 }
-                Thread.sleep(TimeUnit.MINUTES.toMillis(10));
-                connection = UUIDFetcher.createConnection();
-                UUIDFetcher.writeBody(connection, body);
-            }
-            JSONArray array = (JSONArray) this.jsonParser.parse(new InputStreamReader(connection.getInputStream()));
-            completed += array.size();
-            failed += request.size() - array.size();
-            for (Object profile : array) {
-                JSONObject jsonProfile = (JSONObject) profile;
-                UUID uuid = UUIDFetcher.getUUID((String) jsonProfile.get("id"));
-                uuidMap.put((String) jsonProfile.get("name"), uuid);
+            });
+            completed += resumed[0];
+            failed += resumed[1];
+        }
+        ExecutorService pool = this.executor != null ? this.executor
+                : Executors.newFixedThreadPool(Math.max(1, Math.min(this.concurrency, requests)), UUIDFetcher::newThread);
+        CompletionService<Batch> service = new ExecutorCompletionService<>(pool);
+        Deque<Batch> queued = new ArrayDeque<>();
+        Set<Future<Batch>> running = new HashSet<>();
+        Exception error = null;
+        try {
+            for (int i = 0; i < requests; i++) {
+                if (check != null && check.isDone(i)) {
+                    continue;
+                }
+                queued.add(new Batch(i, this.names.subList(i * 100, Math.min((i + 1) * 100, this.names.size()))));
             }
-            if (output) {
-                int processed = completed + failed;
-                if (doOutput.test(processed) || processed == totalNames) {
-                    log.info(String.format("[UUIDFetcher] Progress: %d/%d, %.2f%%, Failed names: %d",
-                        processed, totalNames, ((double) processed / totalNames) * 100D, failed));
+            while (true) {
+                while (running.size() < this.concurrency && !queued.isEmpty()) {
+                    Batch next = queued.poll();
+                    running.add(service.submit(() -> this.request(next)));
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+                Future<Batch> done = service.take();
+                running.remove(done);
+                Batch b;
+                try {
+                    b = done.get();
+                } catch (ExecutionException ex) {
+                    throw new IOException("Unexpected error in UUID request", ex.getCause());
+                }
+                if (b.limited && output) {
+                    log.warning(String.format("[UUIDFetcher] Rate limit hit! Slowing to %.2f requests per second...",
+                            this.limiter.getRate()));
+                }
+                if (b.error != null) {
+                    if (b.retry && b.attempts < UUIDFetcher.MAX_ATTEMPTS) {
+                        queued.addFirst(b);
+                        continue;
+                    }
+                    if (error == null) {
+                        error = b.error;
+                    } else {
+                        error.addSuppressed(b.error);
+                    }
+                    failed += b.names.size();
+                } else {
+                    uuidMap.putAll(b.results);
+                    completed += b.results.size();
+                    failed += b.names.size() - b.results.size();
+                    if (check != null) {
+                        Map<String, UserInfo> record = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                        b.names.forEach(n -> record.put(n, null));
+                        b.results.forEach((n, id) -> record.put(n, new UserInfo(n, id)));
+                        check.write(b.index, record);
+                    }
                 }
+                if (output) {
+                    int processed = completed + failed;
+                    if (doOutput.test(processed) || processed == totalNames) {
+                        log.info(String.format("[UUIDFetcher] Progress: %d/%d, %.2f%%, Failed names: %d",
+                            processed, totalNames, ((double) processed / totalNames) * 100D, failed));
+                    }
+                }
+            }
+        } finally {
+            if (pool != this.executor) {
+                pool.shutdownNow();
+            } else {
+                running.forEach(f -> f.cancel(true));
             }
+            if (check != null) {
+                check.close();
+            }
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof ParseException) {
+            throw (ParseException) error;
+        } else if (error instanceof InterruptedException) {
+            throw (InterruptedException) error;
+        } else if (error != null) {
+            throw (RuntimeException) error;
+        }
+        if (check != null) {
+            check.delete();
         }
         return uuidMap;
     }
 
+    /**
+     * Makes a single attempt at a batch request, recording the results or the
+     * reason for failure in the {@link Batch}. A batch which was rate limited
+     * does not use up one of its attempts
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param b The {@link Batch} to request
+     * @return The same {@link Batch}
+     */
+    private Batch request(Batch b) {
+        boolean wasLimited = b.limited;
+        b.error = null;
+        b.limited = false;
+        b.retry = false;
+        b.results.clear();
+        try {
+            if (b.attempts > 0 && !wasLimited) {
+                Thread.sleep(Math.min(TimeUnit.MINUTES.toMillis(1), 500L << b.attempts));
+            }
+            b.attempts++;
+            if (this.rateLimiting) {
+                this.limiter.acquire();
+            }
+            HttpURLConnection connection = this.createConnection();
+            UUIDFetcher.writeBody(connection, b.body);
+            if (connection.getResponseCode() == 429) {
+                UUIDFetcher.discard(connection);
+                b.error = new IOException("Rate limited by " + connection.getURL());
+                if (this.rateLimiting) {
+                    this.limiter.onRateLimited(UUIDFetcher.getRetryAfter(connection), TimeUnit.SECONDS);
+                    b.limited = true;
+                    b.retry = true;
+                    b.attempts--;
+                }
+                return b;
+            }
+            try (Reader in = UUIDFetcher.openReader(connection)) {
+                new ProfileReader(in).read(b.results::put);
+            }
+            if (this.rateLimiting) {
+                this.limiter.onSuccess();
+            }
+        } catch (IOException ex) {
+            b.error = ex;
+            b.retry = true;
+        } catch (ParseException | RuntimeException ex) {
+            b.error = ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            b.error = ex;
+        }
+        return b;
+    }
+
     /**
      * Calls each supplied name individually to Mojang's servers, treating them
      * as previously used names which henceforth were changed. This method is
@@ -169,8 +435,9 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
      * if there is a need to retrieve names which are now changed
      * 
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      * 
+     * @see UUIDFetcher#streamFromOldNames(Progress)
      * @param output Whether or not to print output
      * @param log The {@link Logger} to print to
      * @param doOutput A {@link Predicate} representing when to output a number
@@ -186,36 +453,224 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
     public Map<String, UserInfo> callFromOldNames(boolean output, Logger log,
             Predicate<? super Integer> doOutput) throws IOException, ParseException, InterruptedException {
         Map<String, UserInfo> back = new HashMap<>();
-        int completed = 0;
-        int failed = 0;
-        for (String s : names) {
-            HttpURLConnection connection = UUIDFetcher.createSingleProfileConnection(s);
-            if (connection.getResponseCode() == 429 && this.rateLimiting) {
-                log.warning("[UUIDFetcher] Rate limit hit! Waiting 10 minutes until continuing conversion...");
-                Thread.sleep(TimeUnit.MINUTES.toMillis(10));
-                connection = UUIDFetcher.createSingleProfileConnection(s);
+        Progress progress = null;
+        if (output) {
+            progress = (processed, total, failed) -> {
+                if (doOutput.test(processed) || processed == total) {
+                    log.info(String.format("[UUIDFetcher] Progress: %d/%d, %.2f%%, Failed names: %d",
+                            processed, total, ((double) processed / total) * 100D, failed));
+                }
+            };
+        }
+        try (Stream<Map.Entry<String, UserInfo>> results = this.streamFromOldNames(progress)) {
+            results.forEach(ent -> {
+                if (output && ent.getValue() == null) {
+                    log.warning(String.format("No profile found for '%s', skipping...", ent.getKey()));
+                }
+                back.put(ent.getKey(), ent.getValue());
+            });
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
             }
-            if (connection.getResponseCode() == 200) {
-                JSONObject o = (JSONObject) this.jsonParser.parse(new InputStreamReader(connection.getInputStream()));
-                back.put(s, new UserInfo((String) o.get("name"), UUIDFetcher.getUUID((String) o.get("id"))));
-                completed++;
-            } else { //e.g. 400, 204
-                if (output) {
-                    log.warning(String.format("No profile found for '%s', skipping...", s));
+            throw ex;
+        }
+        return back;
+    }
+
+    /**
+     * Looks up each supplied name as a previously used name, in the same
+     * manner as {@link UUIDFetcher#callFromOldNames(boolean, Logger, Predicate)},
+     * but returns each result as soon as it is known. Names are requested
+     * concurrently, paced by the {@link RateLimiter}, and each name is
+     * retried up to 5 times on failure. If a checkpoint file is set, results
+     * from an interrupted run are returned first, and the file is deleted
+     * once every name has been returned. If a name cannot be requested at
+     * all, the stream throws a {@link CompletionException} of the cause.
+     * Closing the stream early stops any remaining requests. Requests run on
+     * the executor set through {@link UUIDFetcher#setExecutor(ExecutorService)},
+     * if any
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param progress A {@link Progress} to notify as names complete, or
+     *                 {@code null} for none
+     * @return A {@link Stream} of every supplied name mapped to its
+     *         {@link UserInfo}, or to {@code null} if no profile was found,
+     *         in the order the requests complete
+     * @throws IOException If the checkpoint file could not be opened
+     */
+    public Stream<Map.Entry<String, UserInfo>> streamFromOldNames(Progress progress) throws IOException {
+        int total = this.names.size();
+        FetchCheckpoint check = this.checkpoint == null ? null : new FetchCheckpoint(this.checkpoint, ~this.names.hashCode());
+        BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        int[] counts = new int[2]; //processed, failed
+        Consumer<Map.Entry<String, UserInfo>> complete = ent -> {
+            synchronized (counts) {
+                counts[0]++;
+                if (ent.getValue() == null) {
+                    counts[1]++;
+                }
+                if (progress != null) {
+                    progress.update(counts[0], total, counts[1]);
                 }
-                back.put(s, null);
-                failed++;
-                continue; //nothing can be done with the return
             }
-            if (output) {
-                int processed = completed + failed;
-                if (doOutput.test(processed) || processed == this.names.size()) {
-                    log.info(String.format("[UUIDFetcher] Progress: %d/%d, %.2f%%, Failed names: %d",
-                            processed, this.names.size(), ((double) processed / this.names.size()) * 100D, failed));
+            queue.add(ent);
+        };
+        if (check != null) {
+            check.forEach((name, info) -> complete.accept(new AbstractMap.SimpleImmutableEntry<>(name, info)));
+        }
+        Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < total; i++) {
+            if (check == null || !check.isDone(i)) {
+                pending.add(i);
+            }
+        }
+        //each worker requests names until none remain, so at most the
+        //configured concurrency of requests run at once on any executor
+        int workers = Math.max(1, Math.min(this.concurrency, total));
+        ExecutorService pool = this.executor != null ? this.executor
+                : Executors.newFixedThreadPool(workers, UUIDFetcher::newThread);
+        List<Future<?>> running = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            running.add(pool.submit(() -> {
+                Integer index;
+                while ((index = pending.poll()) != null) {
+                    String name = this.names.get(index);
+                    try {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException();
+                        }
+                        UserInfo info = this.requestOldName(name);
+                        if (check != null) {
+                            check.write(index, Collections.singletonMap(name, info));
+                        }
+                        complete.accept(new AbstractMap.SimpleImmutableEntry<>(name, info));
+                    } catch (IOException | ParseException | RuntimeException ex) {
+                        queue.add(ex);
+                        return;
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        queue.add(ex);
+                        return;
+                    }
+                }
+            }));
+        }
+        if (this.executor == null) {
+            pool.shutdown();
+        }
+        Runnable finish = () -> {
+            if (this.executor == null) {
+                pool.shutdownNow();
+            } else {
+                running.forEach(f -> f.cancel(true));
+            }
+            if (check != null) {
+                try {
+                    check.close();
+                } catch (IOException ex) {
+                    Debugger.error(ex, "Error closing UUID checkpoint");
+                }
+            }
+        };
+        Spliterator<Map.Entry<String, UserInfo>> results = new Spliterators.AbstractSpliterator<Map.Entry<String, UserInfo>>(total, Spliterator.SIZED) {
+
+            private int taken;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean tryAdvance(Consumer<? super Map.Entry<String, UserInfo>> action) {
+                if (this.taken >= total) {
+                    return false;
+                }
+                Object next;
+                try {
+                    next = queue.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    finish.run();
+                    throw new CompletionException(ex);
+                }
+                if (next instanceof Exception) {
+                    finish.run();
+                    throw new CompletionException((Exception) next);
+                }
+                if (++this.taken == total && check != null) {
+                    try {
+                        check.delete();
+                    } catch (IOException ex) {
+                        Debugger.error(ex, "Error deleting UUID checkpoint");
+                    }
                 }
+                action.accept((Map.Entry<String, UserInfo>) next);
+                return true;
+            }
+
+        };
+        return StreamSupport.stream(results, false).onClose(finish);
+    }
+
+    /**
+     * Requests the profile that most recently used a name, retrying failed
+     * requests with backoff
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The previously used name
+     * @return The current {@link UserInfo} of the profile, or {@code null} if
+     *         no profile ever used the name
+     * @throws IOException If every attempt failed
+     * @throws ParseException If the response cannot be read
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    private UserInfo requestOldName(String name) throws IOException, ParseException, InterruptedException {
+        int attempts = 0;
+        while (true) {
+            try {
+                if (this.rateLimiting) {
+                    this.limiter.acquire();
+                }
+                HttpURLConnection connection = this.createSingleProfileConnection(name);
+                int code = connection.getResponseCode();
+                if (code == 429) {
+                    UUIDFetcher.discard(connection);
+                    if (!this.rateLimiting) {
+                        throw new IOException("Rate limited by " + connection.getURL());
+                    }
+                    this.limiter.onRateLimited(UUIDFetcher.getRetryAfter(connection), TimeUnit.SECONDS);
+                    continue;
+                }
+                UserInfo[] info = new UserInfo[1];
+                if (code == 200) {
+                    try (Reader in = UUIDFetcher.openReader(connection)) {
+                        new ProfileReader(in).read((n, id) -> info[0] = new UserInfo(n, id));
+                    }
+                } else {
+                    UUIDFetcher.discard(connection);
+                    if (code >= 500) {
+                        throw new IOException("Server error " + code + " from " + connection.getURL());
+                    }
+                    //e.g. 400, 204, nothing can be done with the return
+                }
+                if (this.rateLimiting) {
+                    this.limiter.onSuccess();
+                }
+                return info[0];
+            } catch (IOException ex) {
+                if (++attempts >= UUIDFetcher.MAX_ATTEMPTS) {
+                    throw ex;
+                }
+                Thread.sleep(Math.min(TimeUnit.MINUTES.toMillis(1), 500L << attempts));
             }
         }
-        return back;
     }
 
     /**
@@ -230,7 +685,7 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
      */
     private static void writeBody(HttpURLConnection connection, String body) throws IOException {
         try (OutputStream stream = connection.getOutputStream()) {
-            stream.write(body.getBytes());
+            stream.write(body.getBytes(StandardCharsets.UTF_8));
             stream.flush();
         }
     }
@@ -239,17 +694,18 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
      * Opens the connection to Mojang's profile API
      * 
      * @since 0.0.1
-     * @version 0.0.1
+     * @version 0.3.2
      * 
      * @return The {@link HttpURLConnection} object to the API server
      * @throws IOException If there is a problem opening the stream, a malformed
      *                     URL, or if there is a ProtocolException
      */
-    private static HttpURLConnection createConnection() throws IOException {
-        URL url = new URL(UUIDFetcher.PROFILE_URL);
+    private HttpURLConnection createConnection() throws IOException {
+        URL url = new URL(this.endpoint + "/profiles/minecraft");
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setRequestMethod("POST");
         connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
         connection.setUseCaches(false);
         connection.setDoInput(true);
         connection.setDoOutput(true);
@@ -260,37 +716,96 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
      * Creates a connection object for requesting a single profile name
      * 
      * @since 0.1.0
-     * @version 0.1.0
+     * @version 0.3.2
      * 
      * @param name The name to request
      * @return The {@link HttpURLConnection} to Mojang's server
      * @throws IOException If there is a problem opening the stream, a malformed
      *                     URL, or if there is a ProtocolException
      */
-    private static HttpURLConnection createSingleProfileConnection(String name) throws IOException {
-        URL url = new URL(String.format("https://api.mojang.com/users/profiles/minecraft/%s?at=0", name));
+    private HttpURLConnection createSingleProfileConnection(String name) throws IOException {
+        URL url = new URL(String.format("%s/users/profiles/minecraft/%s?at=0", this.endpoint, name));
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
         connection.setUseCaches(false);
         connection.setDoOutput(true);
         return connection;
     }
 
     /**
-     * Returns a {@link UUID} formatted from Mojang's server to include dashes
-     * 
-     * @since 0.0.1
-     * @version 0.0.1
-     * 
-     * @param id The UUID in a "raw" format without dashes
-     * @return The newly constructed {@link UUID} object
+     * Returns the number of seconds a rate-limited response asks clients to
+     * wait, from either form of the {@code Retry-After} header
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param connection The rate-limited {@link HttpURLConnection}
+     * @return The number of seconds to wait, or -1 if not given
+     */
+    private static long getRetryAfter(HttpURLConnection connection) {
+        String header = connection.getHeaderField("Retry-After");
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(header.trim()));
+        } catch (NumberFormatException ex) {
+            long date = connection.getHeaderFieldDate("Retry-After", -1);
+            return date < 0 ? -1 : Math.max(0, TimeUnit.MILLISECONDS.toSeconds(date - System.currentTimeMillis()));
+        }
+    }
+
+    static Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "UUIDFetcher");
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Opens the response body of a successful request, decompressing it if
+     * the server sent it gzipped. Closing the returned {@link Reader} after
+     * reading the whole body lets the connection be reused for the next
+     * request to the same server
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param connection The {@link HttpURLConnection} to read from
+     * @return A {@link Reader} of the response body
+     * @throws IOException If the response could not be opened
+     */
+    private static Reader openReader(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            in = new GZIPInputStream(in);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads and discards the body of a response which will not be used, so
+     * that the connection can still be reused
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param connection The {@link HttpURLConnection} to discard
      */
-    private static UUID getUUID(String id) {
-        return UUID.fromString(id.substring(0, 8)
-                + "-" + id.substring(8, 12)
-                + "-" + id.substring(12, 16)
-                + "-" + id.substring(16, 20)
-                + "-" +id.substring(20, 32));
+    private static void discard(HttpURLConnection connection) {
+        try {
+            InputStream in = connection.getResponseCode() >= 400
+                    ? connection.getErrorStream()
+                    : connection.getInputStream();
+            if (in != null) {
+                try (InputStream body = in) {
+                    byte[] buffer = new byte[512];
+                    while (body.read(buffer) >= 0);
+                }
+            }
+        } catch (IOException ex) {
+            connection.disconnect();
+        }
     }
 
     /**
@@ -344,4 +859,69 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         return new UUIDFetcher(Arrays.asList(name)).call().get(name);
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns the {@link UUID} of a player's username without blocking, by
+     * making the request on the {@link Scheduler} service
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @see UUIDFetcher#getUUIDOf(String)
+     * @param name The username of the player to fetch a {@link UUID} for
+     * @return A {@link CompletableFuture} of the player's {@link UUID}, or of
+     *         {@code null} if no such player exists
+     */
+    public static CompletableFuture<UUID> getUUIDOfAsync(String name) {
+        return new UUIDFetcher(Arrays.asList(name)).callAsync().thenApply(m -> m.get(name));
+    }
+
+    /**
+     * Receives progress updates from a long-running conversion
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    @FunctionalInterface
+    public static interface Progress {
+
+        /**
+         * Called each time a name completes. Calls are made one at a time,
+         * though not necessarily from the same thread
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param processed The number of names completed so far
+         * @param total The total number of names
+         * @param failed The number of completed names without a profile
+         */
+        public void update(int processed, int total, int failed);
+
+    }
+
+    /**
+     * A single request of at most 100 names, along with its latest outcome
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static final class Batch {
+
+        private final int index;
+        private final List<String> names;
+        private final String body;
+        private final Map<String, UUID> results = new HashMap<>();
+        private int attempts;
+        private boolean limited;
+        private boolean retry;
+        private Exception error;
+
+        private Batch(int index, List<String> names) {
+            this.index = index;
+            this.names = names;
+            this.body = JSONArray.toJSONString(names);
+        }
+
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.codelanx.commons.logging.Debugger;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates every name lookup made to Mojang, so that many plugins looking
+ * up names at once share requests rather than each making their own. Callers
+ * looking up a name already in flight share its result, and names looked up
+ * individually within a short window are combined into a single bulk request
+ * of up to 100 names. Results, including names which do not exist, are
+ * stored in the {@link UUIDCache}.
+ * <br><br>
+ * Batches are timed and requested on threads owned by this class rather than
+ * the shared {@link com.codelanx.commons.util.Scheduler} pool, so that tasks
+ * on that pool blocking on a lookup can never starve the request they are
+ * waiting for
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class UUIDLookup {
+
+    private static final int BATCH_SIZE = 100;
+    private static final long WINDOW = 50;
+    private static final Map<String, CompletableFuture<UUID>> inflight = new ConcurrentHashMap<>();
+    private static final List<String> pending = new ArrayList<>();
+    /** Runs the requests of every {@link UUIDFetcher} made for a lookup */
+    private static final ExecutorService executor = UUIDLookup.newExecutor();
+    /** Sends pending names once the window has passed */
+    private static final ScheduledExecutorService timer = UUIDLookup.newTimer();
+    /** Waits on each batch's {@link UUIDFetcher}, one thread per batch */
+    private static final ExecutorService batches = Executors.newCachedThreadPool(UUIDLookup::newThread);
+    private static ScheduledFuture<?> flush;
+
+    private UUIDLookup() {
+    }
+
+    /**
+     * Looks up the {@link UUID} of a player name. Cached names complete
+     * immediately, while others are requested from Mojang within 50
+     * milliseconds, along with any other names looked up in the meantime
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return A {@link CompletableFuture} of the player's {@link UUID}, or of
+     *         {@code null} if no such player exists
+     */
+    public static CompletableFuture<UUID> lookup(String name) {
+        UUID id = UUIDCache.get(name);
+        if (id != null || UUIDCache.contains(name)) {
+            return CompletableFuture.completedFuture(id);
+        }
+        String key = name.toLowerCase(Locale.ENGLISH);
+        CompletableFuture<UUID> back = UUIDLookup.inflight.get(key);
+        if (back != null) {
+            return back;
+        }
+        CompletableFuture<UUID> created = new CompletableFuture<>();
+        back = UUIDLookup.inflight.putIfAbsent(key, created);
+        if (back != null) {
+            return back;
+        }
+        UUIDLookup.enqueue(key);
+        return created;
+    }
+
+    /**
+     * Looks up the {@link UUID}s of many player names
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @see UUIDLookup#lookup(String)
+     * @param names The player names, in any case
+     * @return A {@link CompletableFuture} of each supplied name mapped to its
+     *         {@link UUID}, or to {@code null} if no such player exists
+     */
+    public static CompletableFuture<Map<String, UUID>> lookupAll(Collection<String> names) {
+        Map<String, CompletableFuture<UUID>> futures = new HashMap<>();
+        names.forEach(name -> futures.put(name, UUIDLookup.lookup(name)));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+            Map<String, UUID> back = new HashMap<>();
+            futures.forEach((name, f) -> back.put(name, f.join()));
+            return back;
+        });
+    }
+
+    /**
+     * Adds a name to the next bulk request, sending it once full or once the
+     * window has passed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The lowercase player name
+     */
+    private static void enqueue(String key) {
+        synchronized (UUIDLookup.pending) {
+            UUIDLookup.pending.add(key);
+            if (UUIDLookup.pending.size() >= BATCH_SIZE) {
+                List<String> batch = UUIDLookup.drain();
+                UUIDLookup.batches.execute(() -> UUIDLookup.request(batch));
+            } else if (UUIDLookup.flush == null) {
+                UUIDLookup.flush = UUIDLookup.timer.schedule(UUIDLookup::flush, WINDOW, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void flush() {
+        List<String> batch;
+        synchronized (UUIDLookup.pending) {
+            UUIDLookup.flush = null;
+            batch = UUIDLookup.drain();
+        }
+        if (!batch.isEmpty()) {
+            UUIDLookup.batches.execute(() -> UUIDLookup.request(batch));
+        }
+    }
+
+    /**
+     * Removes every pending name. Must be called while holding the lock on
+     * {@link UUIDLookup#pending}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The names that were pending
+     */
+    private static List<String> drain() {
+        if (UUIDLookup.flush != null) {
+            UUIDLookup.flush.cancel(false);
+            UUIDLookup.flush = null;
+        }
+        List<String> back = new ArrayList<>(UUIDLookup.pending);
+        UUIDLookup.pending.clear();
+        return back;
+    }
+
+    /**
+     * Requests a batch of names and completes everyone waiting on them
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param batch The lowercase player names to request
+     */
+    private static void request(List<String> batch) {
+        Map<String, UUID> found = new HashMap<>();
+        Throwable error = null;
+        boolean done = false;
+        try {
+            new UUIDFetcher(batch).setExecutor(UUIDLookup.executor).call()
+                    .forEach((name, id) -> found.put(name.toLowerCase(Locale.ENGLISH), id));
+            done = true;
+        } catch (IOException | ParseException | InterruptedException | RuntimeException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            } else if (ex instanceof RuntimeException) {
+                Debugger.error(ex, "Unexpected error looking up %d names", batch.size());
+            }
+            error = ex;
+        } finally {
+            if (!done && error == null) {
+                error = new IllegalStateException("UUID lookup ended unexpectedly");
+            }
+            UUIDLookup.complete(batch, found, error);
+        }
+    }
+
+    /**
+     * Completes and removes the in-flight lookup of every name in a batch,
+     * so that no caller is left waiting
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param batch The lowercase player names which were requested
+     * @param found The names which were found, mapped to their {@link UUID}s
+     * @param error The reason the request failed, or {@code null} if it
+     *              succeeded
+     */
+    private static void complete(List<String> batch, Map<String, UUID> found, Throwable error) {
+        for (String key : batch) {
+            UUID id = found.get(key);
+            if (error == null) {
+                UUIDCache.put(key, id);
+            }
+            CompletableFuture<UUID> f = UUIDLookup.inflight.remove(key);
+            if (f == null) {
+                continue;
+            }
+            if (error == null) {
+                f.complete(id);
+            } else {
+                f.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Creates the pool shared by every lookup request. Its threads are
+     * daemons, and exit when no lookups have been made for a minute
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The shared {@link ExecutorService}
+     */
+    private static ExecutorService newExecutor() {
+        ThreadPoolExecutor back = new ThreadPoolExecutor(4, 4, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), UUIDFetcher::newThread);
+        back.allowCoreThreadTimeOut(true);
+        return back;
+    }
+
+    /**
+     * Creates the single daemon thread which times the lookup window. It
+     * only hands batches off, so it is never held up by a request
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The {@link ScheduledExecutorService} for flushing batches
+     */
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor back = new ScheduledThreadPoolExecutor(1, UUIDLookup::newThread);
+        back.setRemoveOnCancelPolicy(true);
+        return back;
+    }
+
+    private static Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "UUIDLookup");
+        t.setDaemon(true);
+        return t;
+    }
+
+}
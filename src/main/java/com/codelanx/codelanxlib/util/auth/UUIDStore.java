@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The on-disk tier of {@link UUIDCache}, a memory-mapped open-addressed table
+ * of lowercase names to {@link UUIDCache.Entry entries}. Each slot is a fixed
+ * 48 bytes, so lookups read the mapped file directly and never deserialize
+ * the whole store. Names longer than 16 characters or outside of ASCII are
+ * never valid Minecraft names, and are not stored
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class UUIDStore implements Closeable {
+
+    private static final int MAGIC = 0x434C5543; //CLUC
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int SLOT = 48;
+    private static final int MAX_NAME = 16;
+    private static final int MAX_CAPACITY = 1 << 24;
+    private static final byte EMPTY = 0;
+    private static final byte FOUND = 1;
+    private static final byte MISSING = 2;
+    //slot layout
+    private static final int STATE = 0;
+    private static final int LENGTH = 1;
+    private static final int NAME = 2;
+    private static final int MSB = 24;
+    private static final int LSB = 32;
+    private static final int EXPIRES = 40;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int count;
+
+    /**
+     * Opens or creates a store. A file which is not a valid store is replaced
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The store file
+     * @throws IOException If the file could not be opened or mapped
+     */
+    public UUIDStore(File file) throws IOException {
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = this.raf.getChannel();
+        long length = this.channel.size();
+        if (length >= HEADER) {
+            this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            int cap = this.map.getInt(8);
+            if (this.map.getInt(0) == MAGIC && this.map.getInt(4) == VERSION
+                    && cap > 0 && Integer.bitCount(cap) == 1
+                    && length == HEADER + (long) cap * SLOT) {
+                this.capacity = cap;
+                this.count = this.map.getInt(12);
+                return;
+            }
+        }
+        this.resize(1024);
+    }
+
+    /**
+     * Returns the stored entry for a name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The lowercase player name
+     * @return The stored {@link UUIDCache.Entry}, which may have expired, or
+     *         {@code null} if there is none
+     */
+    public synchronized UUIDCache.Entry get(String name) {
+        byte[] key = UUIDStore.encode(name);
+        if (key == null) {
+            return null;
+        }
+        int pos = this.find(key);
+        byte state = this.map.get(pos + STATE);
+        if (state == EMPTY) {
+            return null;
+        }
+        UUID id = state == FOUND ? new UUID(this.map.getLong(pos + MSB), this.map.getLong(pos + LSB)) : null;
+        return new UUIDCache.Entry(id, this.map.getLong(pos + EXPIRES));
+    }
+
+    /**
+     * Stores the entry for a name, replacing any previous entry
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The lowercase player name
+     * @param entry The {@link UUIDCache.Entry} to store
+     * @throws IOException If the store needed to grow and could not
+     */
+    public synchronized void put(String name, UUIDCache.Entry entry) throws IOException {
+        byte[] key = UUIDStore.encode(name);
+        if (key == null) {
+            return;
+        }
+        if ((this.count + 1) * 10L > this.capacity * 7L) {
+            this.resize(this.capacity < MAX_CAPACITY ? this.capacity * 2 : this.capacity);
+            if ((this.count + 1) * 10L > this.capacity * 7L) {
+                return; //full of unexpired names
+            }
+        }
+        this.write(key, entry);
+    }
+
+    /**
+     * Returns the number of names stored, including expired ones
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of stored names
+     */
+    public synchronized int size() {
+        return this.count;
+    }
+
+    /**
+     * Flushes all changes to disk and closes the file
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException If the file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.map.force();
+        this.raf.close();
+    }
+
+    /**
+     * Returns the position of the slot holding a name, or of the empty slot
+     * where it belongs
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param key The encoded name
+     * @return The byte offset of the slot
+     */
+    private int find(byte[] key) {
+        int mask = this.capacity - 1;
+        int i = UUIDStore.hash(key) & mask;
+        while (true) {
+            int pos = HEADER + i * SLOT;
+            if (this.map.get(pos + STATE) == EMPTY || this.matches(pos, key)) {
+                return pos;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private boolean matches(int pos, byte[] key) {
+        if (this.map.get(pos + LENGTH) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (this.map.get(pos + NAME + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(byte[] key, UUIDCache.Entry entry) {
+        int pos = this.find(key);
+        if (this.map.get(pos + STATE) == EMPTY) {
+            this.map.put(pos + LENGTH, (byte) key.length);
+            for (int i = 0; i < key.length; i++) {
+                this.map.put(pos + NAME + i, key[i]);
+            }
+            this.map.putInt(12, ++this.count);
+        }
+        UUID id = entry.getUUID();
+        this.map.putLong(pos + MSB, id == null ? 0 : id.getMostSignificantBits());
+        this.map.putLong(pos + LSB, id == null ? 0 : id.getLeastSignificantBits());
+        this.map.putLong(pos + EXPIRES, entry.getExpiry());
+        this.map.put(pos + STATE, id == null ? MISSING : FOUND);
+    }
+
+    /**
+     * Rebuilds the table at a new capacity, dropping expired entries
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param size The new number of slots, a power of two
+     * @throws IOException If the file could not be resized
+     */
+    private void resize(int size) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        List<UUIDCache.Entry> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < this.capacity; i++) {
+            int pos = HEADER + i * SLOT;
+            byte state = this.map.get(pos + STATE);
+            if (state == EMPTY || this.map.getLong(pos + EXPIRES) <= now) {
+                continue;
+            }
+            byte[] key = new byte[this.map.get(pos + LENGTH)];
+            for (int k = 0; k < key.length; k++) {
+                key[k] = this.map.get(pos + NAME + k);
+            }
+            keys.add(key);
+            entries.add(new UUIDCache.Entry(state == FOUND
+                    ? new UUID(this.map.getLong(pos + MSB), this.map.getLong(pos + LSB)) : null,
+                    this.map.getLong(pos + EXPIRES)));
+        }
+        long length = HEADER + (long) size * SLOT;
+        this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        for (int pos = 0; pos < length; pos += 8) {
+            this.map.putLong(pos, 0);
+        }
+        if (this.channel.size() > length) {
+            this.channel.truncate(length);
+        }
+        this.map.putInt(0, MAGIC);
+        this.map.putInt(4, VERSION);
+        this.map.putInt(8, size);
+        this.map.putInt(12, 0);
+        this.capacity = size;
+        this.count = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            this.write(keys.get(i), entries.get(i));
+        }
+    }
+
+    /**
+     * Encodes a lowercase name as ASCII bytes
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The name to encode
+     * @return The encoded name, or {@code null} if it cannot be stored
+     */
+    private static byte[] encode(String name) {
+        int len = name.length();
+        if (len == 0 || len > MAX_NAME) {
+            return null;
+        }
+        byte[] back = new byte[len];
+        for (int i = 0; i < len; i++) {
+            char c = name.charAt(i);
+            if (c > 127) {
+                return null;
+            }
+            back[i] = (byte) c;
+        }
+        return back;
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0x811C9DC5;
+        for (byte b : key) {
+            h = (h ^ b) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+}
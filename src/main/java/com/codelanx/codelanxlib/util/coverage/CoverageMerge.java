@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.coverage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Combines {@link CoverageSnapshot coverage snapshots} from any number of
+ * servers and runs into a single snapshot, or exports them as CSV or an LCOV
+ * tracefile. Inputs are merged as sorted streams, so only one entry per input
+ * is held in memory regardless of how large the history is. Hits on the same
+ * line are summed, and the largest expected marker count of a method is kept.
+ * <br><br>
+ * This class can also be run from the command line:
+ * <pre>
+ * java -cp CodelanxLib.jar com.codelanx.codelanxlib.util.coverage.CoverageMerge
+ *     &lt;merge|csv|lcov&gt; &lt;output&gt; &lt;input file or folder&gt;...
+ * </pre>
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class CoverageMerge {
+
+    /** The extension of snapshot files found when given a folder */
+    public static final String EXTENSION = ".snap";
+
+    private CoverageMerge() {
+    }
+
+    /**
+     * Command line entry point
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param args The format, output file and input snapshots or folders
+     * @throws IOException If a snapshot could not be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: CoverageMerge <merge|csv|lcov> <output> <input file or folder>...");
+            System.exit(1);
+            return;
+        }
+        List<File> inputs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            inputs.addAll(CoverageMerge.findSnapshots(new File(args[i])));
+        }
+        File out = new File(args[1]);
+        switch (args[0].toLowerCase()) {
+            case "merge":
+                CoverageMerge.merge(inputs, out);
+                break;
+            case "csv":
+                CoverageMerge.exportCsv(inputs, out);
+                break;
+            case "lcov":
+                CoverageMerge.exportLcov(inputs, out);
+                break;
+            default:
+                System.err.println("Unknown format '" + args[0] + "', expected merge, csv or lcov");
+                System.exit(1);
+                return;
+        }
+        System.out.println("Wrote " + inputs.size() + " snapshot(s) to " + out);
+    }
+
+    /**
+     * Returns the snapshot files at a path. A file is returned as-is, while a
+     * folder is searched for files ending in {@link CoverageMerge#EXTENSION}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param path The file or folder
+     * @return The snapshot files found, in name order
+     */
+    public static List<File> findSnapshots(File path) {
+        List<File> back = new ArrayList<>();
+        if (!path.isDirectory()) {
+            back.add(path);
+            return back;
+        }
+        File[] files = path.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            TreeMap<String, File> sorted = new TreeMap<>();
+            for (File f : files) {
+                sorted.put(f.getName(), f);
+            }
+            back.addAll(sorted.values());
+        }
+        return back;
+    }
+
+    /**
+     * Merges snapshots into a single snapshot
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param inputs The snapshots to merge
+     * @param output The snapshot file to write
+     * @throws IOException If a snapshot could not be read or written
+     */
+    public static void merge(Collection<File> inputs, File output) throws IOException {
+        try (Merged in = new Merged(inputs);
+                CoverageSnapshot.Writer out = CoverageSnapshot.write(output, in.plugin, in.timestamp)) {
+            CoverageSnapshot.Entry e;
+            while ((e = in.next()) != null) {
+                out.write(e);
+            }
+        }
+    }
+
+    /**
+     * Exports merged snapshots as CSV, with one row per line or branch outcome
+     * in the form {@code class,method,line,hits,block,branch}, where the block
+     * and branch are left empty for lines. Expected marker counts are
+     * exported as rows with a line of {@link CoverageSnapshot#EXPECTED}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param inputs The snapshots to export
+     * @param output The CSV file to write
+     * @throws IOException If a snapshot could not be read or written
+     */
+    public static void exportCsv(Collection<File> inputs, File output) throws IOException {
+        try (Merged in = new Merged(inputs); Writer out = CoverageMerge.open(output)) {
+            out.write("class,method,line,hits,block,branch\n");
+            CoverageSnapshot.Entry e;
+            while ((e = in.next()) != null) {
+                out.write(CoverageMerge.csv(e.getClassName()));
+                out.write(',');
+                out.write(CoverageMerge.csv(e.getMethod()));
+                out.write(',');
+                out.write(Integer.toString(e.getLine()));
+                out.write(',');
+                out.write(Long.toString(e.getHits()));
+                out.write(',');
+                if (e.isBranch()) {
+                    out.write(Integer.toString(e.getBlock()));
+                    out.write(',');
+                    out.write(Integer.toString(e.getBranch()));
+                } else {
+                    out.write(',');
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Exports merged snapshots as an LCOV tracefile, with one record per
+     * source file. Source paths are derived from class names, so classes
+     * declared in a file of another name are reported under their own name.
+     * <br><br>
+     * Lines probed by the {@link com.codelanx.codelanxlib.util.coverage.agent.CoverageAgent}
+     * are recorded even when never hit. Manual markers are only located once
+     * hit, so a method's missed manual markers have no line; they are counted
+     * in the lines found ({@code LF}) from its expected marker count, but
+     * have no {@code DA} record. Branch outcomes probed by the agent are
+     * exported as {@code BRDA} records, numbering the branch points of each
+     * line in order
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param inputs The snapshots to export
+     * @param output The tracefile to write
+     * @throws IOException If a snapshot could not be read or written
+     */
+    public static void exportLcov(Collection<File> inputs, File output) throws IOException {
+        try (Merged in = new Merged(inputs); Writer out = CoverageMerge.open(output)) {
+            //Nested classes sort directly after their outer class, so each
+            //source file is contiguous and only one is buffered at a time
+            String source = null;
+            Map<String, long[]> methods = new LinkedHashMap<>();
+            Map<Integer, Long> lines = new TreeMap<>();
+            //each line mapped to its branch points, each holding outcome hits
+            Map<Integer, Map<String, Map<Integer, Long>>> branches = new TreeMap<>();
+            //the expected marker count of each method, less its known lines
+            Map<String, Long> unlocated = new LinkedHashMap<>();
+            CoverageSnapshot.Entry e;
+            while ((e = in.next()) != null) {
+                String file = CoverageMerge.sourceOf(e.getClassName());
+                if (!file.equals(source)) {
+                    CoverageMerge.writeLcov(out, source, methods, branches, lines, CoverageMerge.sum(unlocated));
+                    source = file;
+                    methods.clear();
+                    branches.clear();
+                    lines.clear();
+                    unlocated.clear();
+                }
+                String name = e.getClassName().substring(e.getClassName().lastIndexOf('.') + 1) + "." + e.getMethod();
+                if (e.isBranch()) {
+                    branches.computeIfAbsent(e.getLine(), k -> new LinkedHashMap<>())
+                            .computeIfAbsent(e.getClassName() + "#" + e.getMethod() + "#" + e.getBlock(), k -> new TreeMap<>())
+                            .merge(e.getBranch(), e.getHits(), Long::sum);
+                    continue;
+                }
+                if (e.isExpected()) {
+                    unlocated.merge(name, e.getHits(), Long::sum);
+                    continue;
+                }
+                unlocated.merge(name, -1L, Long::sum);
+                long[] method = methods.get(name);
+                if (method == null) {
+                    //the first line of a method in order, and its most hit line
+                    methods.put(name, new long[] { e.getLine(), e.getHits() });
+                } else {
+                    method[1] = Math.max(method[1], e.getHits());
+                }
+                lines.merge(e.getLine(), e.getHits(), Long::sum);
+            }
+            CoverageMerge.writeLcov(out, source, methods, branches, lines, CoverageMerge.sum(unlocated));
+        }
+    }
+
+    private static long sum(Map<String, Long> unlocated) {
+        long back = 0;
+        for (long missing : unlocated.values()) {
+            back += Math.max(0, missing);
+        }
+        return back;
+    }
+
+    private static void writeLcov(Writer out, String source, Map<String, long[]> methods,
+            Map<Integer, Map<String, Map<Integer, Long>>> branches, Map<Integer, Long> lines, long unlocated) throws IOException {
+        if (source == null) {
+            return;
+        }
+        out.write("TN:\nSF:" + source + "\n");
+        int hitMethods = 0;
+        for (Map.Entry<String, long[]> m : methods.entrySet()) {
+            out.write("FN:" + m.getValue()[0] + "," + m.getKey() + "\n");
+        }
+        for (Map.Entry<String, long[]> m : methods.entrySet()) {
+            out.write("FNDA:" + m.getValue()[1] + "," + m.getKey() + "\n");
+            if (m.getValue()[1] > 0) {
+                hitMethods++;
+            }
+        }
+        out.write("FNF:" + methods.size() + "\nFNH:" + hitMethods + "\n");
+        int foundBranches = 0;
+        int hitBranches = 0;
+        for (Map.Entry<Integer, Map<String, Map<Integer, Long>>> l : branches.entrySet()) {
+            int block = 0;
+            for (Map<Integer, Long> outcomes : l.getValue().values()) {
+                //a branch point which was never reached has no taken counts
+                boolean reached = outcomes.values().stream().anyMatch(h -> h > 0);
+                for (Map.Entry<Integer, Long> o : outcomes.entrySet()) {
+                    long taken = o.getValue();
+                    out.write("BRDA:" + l.getKey() + "," + block + "," + o.getKey() + "," + (reached ? Long.toString(taken) : "-") + "\n");
+                    foundBranches++;
+                    if (taken > 0) {
+                        hitBranches++;
+                    }
+                }
+                block++;
+            }
+        }
+        out.write("BRF:" + foundBranches + "\nBRH:" + hitBranches + "\n");
+        int hitLines = 0;
+        for (Map.Entry<Integer, Long> l : lines.entrySet()) {
+            out.write("DA:" + l.getKey() + "," + l.getValue() + "\n");
+            if (l.getValue() > 0) {
+                hitLines++;
+            }
+        }
+        out.write("LF:" + (lines.size() + unlocated) + "\nLH:" + hitLines + "\nend_of_record\n");
+    }
+
+    private static String sourceOf(String clazz) {
+        int nested = clazz.indexOf('$');
+        return (nested < 0 ? clazz : clazz.substring(0, nested)).replace('.', '/') + ".java";
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static Writer open(File output) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A k-way merge over several snapshots, combining equal entries
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static final class Merged implements AutoCloseable {
+
+        private final List<CoverageSnapshot.Reader> readers = new ArrayList<>();
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> CoverageSnapshot.compare(a.current, b.current));
+        private final String plugin;
+        private final long timestamp;
+
+        private Merged(Collection<File> inputs) throws IOException {
+            String name = null;
+            long time = 0;
+            try {
+                for (File f : inputs) {
+                    CoverageSnapshot.Reader r = CoverageSnapshot.read(f);
+                    this.readers.add(r);
+                    name = name == null || name.equals(r.getPlugin()) ? r.getPlugin() : "merged";
+                    time = Math.max(time, r.getTimestamp());
+                    Cursor c = new Cursor(f, r);
+                    if (c.advance()) {
+                        this.queue.add(c);
+                    }
+                }
+            } catch (IOException ex) {
+                this.close();
+                throw ex;
+            }
+            this.plugin = name == null ? "merged" : name;
+            this.timestamp = time;
+        }
+
+        private CoverageSnapshot.Entry next() throws IOException {
+            Cursor c = this.queue.poll();
+            if (c == null) {
+                return null;
+            }
+            CoverageSnapshot.Entry back = c.current;
+            long hits = back.getHits();
+            this.requeue(c);
+            while (!this.queue.isEmpty() && CoverageSnapshot.compare(this.queue.peek().current, back) == 0) {
+                c = this.queue.poll();
+                hits = back.isExpected() ? Math.max(hits, c.current.getHits()) : hits + c.current.getHits();
+                this.requeue(c);
+            }
+            return new CoverageSnapshot.Entry(back.getClassName(), back.getMethod(), back.getLine(), back.getBlock(), back.getBranch(), hits);
+        }
+
+        private void requeue(Cursor c) throws IOException {
+            if (c.advance()) {
+                this.queue.add(c);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException error = null;
+            for (CoverageSnapshot.Reader r : this.readers) {
+                try {
+                    r.close();
+                } catch (IOException ex) {
+                    error = ex;
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+    }
+
+    private static final class Cursor {
+
+        private final File file;
+        private final CoverageSnapshot.Reader reader;
+        private CoverageSnapshot.Entry current;
+
+        private Cursor(File file, CoverageSnapshot.Reader reader) {
+            this.file = file;
+            this.reader = reader;
+        }
+
+        private boolean advance() throws IOException {
+            try {
+                this.current = this.reader.next();
+            } catch (IOException ex) {
+                throw new IOException("Error reading coverage snapshot: " + this.file, ex);
+            }
+            return this.current != null;
+        }
+
+    }
+
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.coverage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The binary coverage snapshot format. A snapshot is a gzipped stream of
+ * {@code (class, method, line, hits)} entries sorted by class, method and
+ * line, where the class and method are only written when they change. An entry
+ * with a line of {@link CoverageSnapshot#EXPECTED} holds the number of markers
+ * expected in its method rather than a hit count. Branch entries follow the
+ * line entry of their line, and also hold the index of their branch point on
+ * the line and of the outcome within it. As entries are sorted, any number of
+ * snapshots can be merged while holding one entry of each in memory
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class CoverageSnapshot {
+
+    /** The line of an entry holding the expected marker count of a method */
+    public static final int EXPECTED = -1;
+    private static final int MAGIC = 0x434C4353; //CLCS
+    private static final int VERSION = 2;
+    /** The first version, which has no branch entries */
+    private static final int VERSION_LINES = 1;
+    private static final int END = 0;
+    private static final int CLASS = 1;
+    private static final int METHOD = 2;
+    private static final int LINE = 3;
+    private static final int BRANCH = 4;
+
+    private CoverageSnapshot() {
+    }
+
+    /**
+     * Opens a snapshot file for reading
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The snapshot file
+     * @return A {@link Reader} positioned at the first entry
+     * @throws IOException If the file could not be read or is not a snapshot
+     */
+    public static Reader read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return new Reader(in);
+        } catch (IOException ex) {
+            in.close();
+            throw new IOException("Not a valid coverage snapshot: " + file, ex);
+        }
+    }
+
+    /**
+     * Creates a snapshot file for writing, replacing any existing file
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param file The snapshot file
+     * @param plugin The name of the plugin the coverage is for
+     * @param timestamp The time the coverage was taken, in milliseconds
+     * @return A {@link Writer} expecting the first entry
+     * @throws IOException If the file could not be written
+     */
+    public static Writer write(File file, String plugin, long timestamp) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            return new Writer(out, plugin, timestamp);
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Orders entries by class, then method, then line, then branch point and
+     * outcome, where the line entry comes before the branches of its line
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param a The first {@link Entry}
+     * @param b The second {@link Entry}
+     * @return A negative number if {@code a} is written before {@code b}
+     */
+    static int compare(Entry a, Entry b) {
+        int back = a.clazz.compareTo(b.clazz);
+        if (back == 0) {
+            back = a.method.compareTo(b.method);
+            if (back == 0) {
+                back = Integer.compare(a.line, b.line);
+                if (back == 0) {
+                    back = Integer.compare(a.block, b.block);
+                    if (back == 0) {
+                        back = Integer.compare(a.branch, b.branch);
+                    }
+                }
+            }
+        }
+        return back;
+    }
+
+    /**
+     * A single line or branch outcome of coverage, or the expected marker
+     * count of a method
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static final class Entry {
+
+        private final String clazz;
+        private final String method;
+        private final int line;
+        private final int block;
+        private final int branch;
+        private final long hits;
+
+        /**
+         * Constructor. Assigns parameters to fields
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param clazz The binary name of the class
+         * @param method The name of the method
+         * @param line The line, or {@link CoverageSnapshot#EXPECTED}
+         * @param hits The number of hits, or the expected marker count
+         */
+        public Entry(String clazz, String method, int line, long hits) {
+            this(clazz, method, line, -1, -1, hits);
+        }
+
+        /**
+         * Constructor for the entry of a branch outcome. Assigns parameters
+         * to fields
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param clazz The binary name of the class
+         * @param method The name of the method
+         * @param line The line of the branch point
+         * @param block The index of the branch point within its line, or -1
+         *              for a line entry
+         * @param branch The index of the outcome within its branch point, or
+         *               -1 for a line entry
+         * @param hits The number of times the outcome was taken
+         */
+        public Entry(String clazz, String method, int line, int block, int branch, long hits) {
+            this.clazz = clazz;
+            this.method = method;
+            this.line = line;
+            this.block = block;
+            this.branch = branch;
+            this.hits = hits;
+        }
+
+        /**
+         * Returns the binary name of the class
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The class name
+         */
+        public String getClassName() {
+            return this.clazz;
+        }
+
+        /**
+         * Returns the name of the method
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The method name
+         */
+        public String getMethod() {
+            return this.method;
+        }
+
+        /**
+         * Returns the line of this entry
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The line, or {@link CoverageSnapshot#EXPECTED}
+         */
+        public int getLine() {
+            return this.line;
+        }
+
+        /**
+         * Returns the index of the branch point within its line
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The block index, or -1 if this is not a branch entry
+         */
+        public int getBlock() {
+            return this.block;
+        }
+
+        /**
+         * Returns the index of the outcome within its branch point
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The branch index, or -1 if this is not a branch entry
+         */
+        public int getBranch() {
+            return this.branch;
+        }
+
+        /**
+         * Returns the number of hits on the line or branch outcome, or the
+         * number of markers expected in the method if
+         * {@link Entry#isExpected()}
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The hit or marker count
+         */
+        public long getHits() {
+            return this.hits;
+        }
+
+        /**
+         * Returns whether this entry holds the expected marker count of its
+         * method
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return {@code true} if the line is {@link CoverageSnapshot#EXPECTED}
+         */
+        public boolean isExpected() {
+            return this.line == EXPECTED;
+        }
+
+        /**
+         * Returns whether this entry holds the hits of a branch outcome
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return {@code true} if this entry has a branch point
+         */
+        public boolean isBranch() {
+            return this.block >= 0;
+        }
+
+    }
+
+    /**
+     * Reads the entries of a snapshot in order
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final String plugin;
+        private final long timestamp;
+        private String clazz;
+        private String method;
+
+        /**
+         * Reads the snapshot header
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param in The raw snapshot stream
+         * @throws IOException If the stream could not be read or is not a
+         *                     snapshot
+         */
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Bad snapshot header");
+            }
+            int version = this.in.readInt();
+            if (version != VERSION && version != VERSION_LINES) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            this.plugin = this.in.readUTF();
+            this.timestamp = this.in.readLong();
+        }
+
+        /**
+         * Returns the name of the plugin the snapshot is for
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The plugin name
+         */
+        public String getPlugin() {
+            return this.plugin;
+        }
+
+        /**
+         * Returns when the snapshot was taken
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The time of the snapshot, in milliseconds
+         */
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+
+        /**
+         * Reads the next entry
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The next {@link Entry}, or {@code null} at the end
+         * @throws IOException If the snapshot could not be read, or was cut
+         *                     short
+         */
+        public Entry next() throws IOException {
+            while (true) {
+                int type = this.in.read();
+                switch (type) {
+                    case END:
+                        return null;
+                    case CLASS:
+                        this.clazz = this.in.readUTF();
+                        break;
+                    case METHOD:
+                        this.method = this.in.readUTF();
+                        break;
+                    case LINE:
+                        if (this.clazz == null || this.method == null) {
+                            throw new IOException("Snapshot line without a class and method");
+                        }
+                        return new Entry(this.clazz, this.method, this.in.readInt(), this.in.readLong());
+                    case BRANCH:
+                        if (this.clazz == null || this.method == null) {
+                            throw new IOException("Snapshot branch without a class and method");
+                        }
+                        int line = this.in.readInt();
+                        int block = this.in.readInt();
+                        int branch = this.in.readInt();
+                        return new Entry(this.clazz, this.method, line, block, branch, this.in.readLong());
+                    case -1:
+                        throw new EOFException("Snapshot ended without an end marker");
+                    default:
+                        throw new IOException("Unknown snapshot record type " + type);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+
+    }
+
+    /**
+     * Writes the entries of a snapshot, which must be supplied in order
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private Entry last;
+
+        /**
+         * Writes the snapshot header
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param out The raw snapshot stream
+         * @param plugin The name of the plugin the coverage is for
+         * @param timestamp The time the coverage was taken, in milliseconds
+         * @throws IOException If the stream could not be written
+         */
+        public Writer(OutputStream out, String plugin, long timestamp) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeUTF(plugin);
+            this.out.writeLong(timestamp);
+        }
+
+        /**
+         * Writes an entry, which must sort after the previous entry
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param entry The {@link Entry} to write
+         * @throws IOException If the stream could not be written
+         * @throws IllegalStateException If the entry is out of order
+         */
+        public void write(Entry entry) throws IOException {
+            if (this.last != null && CoverageSnapshot.compare(this.last, entry) >= 0) {
+                throw new IllegalStateException("Coverage snapshot entries must be written in order");
+            }
+            if (this.last == null || !this.last.clazz.equals(entry.clazz)) {
+                this.out.write(CLASS);
+                this.out.writeUTF(entry.clazz);
+                this.out.write(METHOD);
+                this.out.writeUTF(entry.method);
+            } else if (!this.last.method.equals(entry.method)) {
+                this.out.write(METHOD);
+                this.out.writeUTF(entry.method);
+            }
+            if (entry.isBranch()) {
+                this.out.write(BRANCH);
+                this.out.writeInt(entry.line);
+                this.out.writeInt(entry.block);
+                this.out.writeInt(entry.branch);
+            } else {
+                this.out.write(LINE);
+                this.out.writeInt(entry.line);
+            }
+            this.out.writeLong(entry.hits);
+            this.last = entry;
+        }
+
+        /**
+         * Ends the snapshot and closes the stream
+         * <br><br> {@inheritDoc}
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                this.out.write(END);
+            } finally {
+                this.out.close();
+            }
+        }
+
+    }
+
+}
@@ -20,28 +20,40 @@
 package com.codelanx.codelanxlib.util.coverage;
 
 import com.codelanx.codelanxlib.util.ReflectBukkit;
+import com.codelanx.codelanxlib.util.coverage.agent.CoverageAgent;
 import com.codelanx.commons.logging.Debugger;
 import com.codelanx.commons.logging.Logging;
-import com.codelanx.commons.util.ref.StrongReference;
+import com.codelanx.commons.util.Scheduler;
+import com.codelanx.commons.util.exception.Exceptions;
 import com.google.common.io.Files;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 
 /**
@@ -54,6 +66,25 @@ import java.util.logging.Level;
  * For more information see the
  * <a href="https://github.com/CodeLanx/CodelanxLib/issues/2">Github ticket</a>
  * on the issue.
+ * <br><br>
+ * For code which is hit often, prefer reserving probe ids through
+ * {@link CoverageUtil#reserveProbes(int)} and calling
+ * {@link CoverageUtil#marker(int)}, which records a hit with a single counter
+ * increment rather than walking the stack:
+ * <pre>
+ * private static final int PROBES = CoverageUtil.reserveProbes(2);
+ *
+ * {@literal @}Coverage(2)
+ * public void example(boolean flag) {
+ *     if (flag) {
+ *         CoverageUtil.marker(PROBES);
+ *     } else {
+ *         CoverageUtil.marker(PROBES + 1);
+ *     }
+ * }
+ * </pre>
+ * Alternatively, starting the server with the {@link CoverageAgent} inserts a
+ * probe at every line of each {@link Coverage} method, without any markers.
  *
  * @deprecated To return in version 0.3.0
  * @since 0.0.1
@@ -64,7 +95,8 @@ public final class CoverageUtil {
 
     /**
      * A method/constructor annotation. The value of this annotation should be
-     * the number of calls to {@link CoverageUtil#marker()} in the method
+     * the number of calls to {@link CoverageUtil#marker()} or
+     * {@link CoverageUtil#marker(int)} in the method
      * 
      * @since 0.0.1
      * @version 0.0.1
@@ -88,7 +120,7 @@ public final class CoverageUtil {
 
         private final String name;
         private final Plugin plugin;
-        private final Map<String, ClassMarker> classes = new HashMap<>();
+        private final Map<String, ClassMarker> classes = new ConcurrentHashMap<>();
 
         public PluginMarker(Plugin plugin, Class<?>... classes) {
             this.name = plugin.getName();
@@ -106,22 +138,44 @@ public final class CoverageUtil {
 
         public PluginMarker addMarks(ClassMarker... classes) {
             for (ClassMarker clazz : classes) {
-                ClassMarker cm = this.classes.get(clazz.getName());
-                if (cm == null) {
-                    this.classes.put(clazz.getName(), clazz);
-                } else {
+                ClassMarker cm = this.classes.putIfAbsent(clazz.getName(), clazz);
+                if (cm != null) {
                     cm.addMarks(clazz.getMethodMarkers().toArray(new MethodMarker[clazz.getMethodMarkers().size()]));
                 }
             }
             return this;
         }
 
-        public void addValue(String clazz, String method, int line, boolean hit) {
+        public void addValue(String clazz, String method, int line, long hits) {
+            ClassMarker cm = this.classes.get(clazz);
+            if (cm == null) {
+                return;
+            }
+            cm.addValue(method, line, hits);
+        }
+
+        public void addLoaded(String clazz, String method, int line, long hits) {
+            ClassMarker cm = this.classes.get(clazz);
+            if (cm == null) {
+                return;
+            }
+            cm.addLoaded(method, line, hits);
+        }
+
+        public void addBranch(String clazz, String method, int line, int block, int branch, long hits) {
             ClassMarker cm = this.classes.get(clazz);
             if (cm == null) {
                 return;
             }
-            cm.addValue(method, line, hit);
+            cm.addBranch(method, line, block, branch, hits);
+        }
+
+        public void addLoadedBranch(String clazz, String method, int line, int block, int branch, long hits) {
+            ClassMarker cm = this.classes.get(clazz);
+            if (cm == null) {
+                return;
+            }
+            cm.addLoadedBranch(method, line, block, branch, hits);
         }
 
         public Plugin getPlugin() {
@@ -131,12 +185,16 @@ public final class CoverageUtil {
         public Collection<ClassMarker> getClassMarkers() {
             return Collections.unmodifiableCollection(this.classes.values());
         }
+
+        public boolean hasClass(String clazz) {
+            return this.classes.containsKey(clazz);
+        }
     }
 
     private final static class ClassMarker {
 
         private final String name;
-        private final Map<String, MethodMarker> methods = new HashMap<>();
+        private final Map<String, MethodMarker> methods = new ConcurrentHashMap<>();
         
         public ClassMarker(Class<?> clazz) {
             this.name = clazz.getName();
@@ -159,22 +217,46 @@ public final class CoverageUtil {
 
         public ClassMarker addMarks(MethodMarker... marks) {
             for (MethodMarker m : marks) {
-                MethodMarker mk = this.methods.get(m.getName());
-                if (mk == null) {
-                    this.methods.put(m.getName(), m);
-                } else {
+                MethodMarker mk = this.methods.putIfAbsent(m.getName(), m);
+                if (mk != null) {
+                    mk.expect(m.getNumber());
                     mk.addMarks(m.getMarkers().toArray(new Marker[m.getMarkers().size()]));
+                    mk.addMarks(m.getBranches().toArray(new Marker[m.getBranches().size()]));
                 }
             }
             return this;
         }
 
-        public void addValue(String method, int line, boolean hit) {
+        public void addValue(String method, int line, long hits) {
+            MethodMarker m = this.methods.get(method);
+            if (m == null) {
+                return;
+            }
+            m.addValue(line, hits);
+        }
+
+        public void addLoaded(String method, int line, long hits) {
             MethodMarker m = this.methods.get(method);
             if (m == null) {
                 return;
             }
-            m.addValue(line, hit);
+            m.addLoaded(line, hits);
+        }
+
+        public void addBranch(String method, int line, int block, int branch, long hits) {
+            MethodMarker m = this.methods.get(method);
+            if (m == null) {
+                return;
+            }
+            m.addBranch(line, block, branch, hits);
+        }
+
+        public void addLoadedBranch(String method, int line, int block, int branch, long hits) {
+            MethodMarker m = this.methods.get(method);
+            if (m == null) {
+                return;
+            }
+            m.addLoadedBranch(line, block, branch, hits);
         }
 
         public String getName() {
@@ -189,8 +271,10 @@ public final class CoverageUtil {
     private final static class MethodMarker {
 
         private final String name;
-        private final int number;
-        private final Map<Integer, Marker> markers = new HashMap<>();
+        private volatile int number;
+        private final Map<Integer, Marker> markers = new ConcurrentHashMap<>();
+        /** Branch outcomes probed by the agent, keyed by line, block and branch */
+        private final Map<Long, Marker> branches = new ConcurrentHashMap<>();
 
         public MethodMarker(Method m) {
             this.name = m.getName();
@@ -224,18 +308,31 @@ public final class CoverageUtil {
 
         public MethodMarker addMarks(Marker... marks) {
             for (Marker m : marks) {
-                Marker mk = this.markers.get(m.getLine());
-                if (mk == null) {
-                    this.markers.put(m.getLine(), m);
-                } else {
-                    mk.setHit(m.isHit());
+                Marker mk = m.isBranch()
+                        ? this.branches.putIfAbsent(m.getKey(), m)
+                        : this.markers.putIfAbsent(m.getLine(), m);
+                if (mk != null) {
+                    mk.addHits(m.getRunHits());
+                    mk.addLoaded(m.getLoadedHits());
                 }
             }
             return this;
         }
 
-        public void addValue(int line, boolean hit) {
-            this.markers.put(line, new Marker(line).setHit(hit));
+        public void addValue(int line, long hits) {
+            this.markers.computeIfAbsent(line, Marker::new).addHits(hits);
+        }
+
+        public void addLoaded(int line, long hits) {
+            this.markers.computeIfAbsent(line, Marker::new).addLoaded(hits);
+        }
+
+        public void addBranch(int line, int block, int branch, long hits) {
+            this.branches.computeIfAbsent(Marker.key(line, block, branch), k -> new Marker(line, block, branch)).addHits(hits);
+        }
+
+        public void addLoadedBranch(int line, int block, int branch, long hits) {
+            this.branches.computeIfAbsent(Marker.key(line, block, branch), k -> new Marker(line, block, branch)).addLoaded(hits);
         }
 
         public String getName() {
@@ -243,52 +340,185 @@ public final class CoverageUtil {
         }
 
         public int getMissed() {
-            return this.getNumber() - this.markers.size();
+            return this.getNumber() - (int) this.markers.values().stream().filter(Marker::isHit).count();
         }
 
         public int getNumber() {
             return this.number;
         }
 
+        public void expect(int number) {
+            if (number > this.number) {
+                this.number = number;
+            }
+        }
+
         public MethodMarker mark(int line) {
-            this.markers.put(line, new Marker(line).setHit(true));
+            this.markers.computeIfAbsent(line, Marker::new).addHits(1);
             return this;
         }
 
+        public long getHits() {
+            return this.markers.values().stream().mapToLong(Marker::getHits).sum();
+        }
+
         public Collection<Marker> getMarkers() {
             return Collections.unmodifiableCollection(this.markers.values());
         }
+
+        public Collection<Marker> getBranches() {
+            return Collections.unmodifiableCollection(this.branches.values());
+        }
     }
 
     private final static class Marker {
         private final int line;
-        private boolean hit = false;
+        /** The branch point and outcome of a branch marker, or -1 for lines */
+        private final int block;
+        private final int branch;
+        private final LongAdder hits = new LongAdder();
+        /** Hits read from earlier runs, which are never written to snapshots */
+        private final LongAdder loaded = new LongAdder();
         
         public Marker(int line) {
+            this(line, -1, -1);
+        }
+
+        public Marker(int line, int block, int branch) {
             this.line = line;
+            this.block = block;
+            this.branch = branch;
+        }
+
+        public static long key(int line, int block, int branch) {
+            return ((long) line << 32) | ((long) (block & 0xFFFF) << 16) | (branch & 0xFFFF);
+        }
+
+        public long getKey() {
+            return Marker.key(this.line, this.block, this.branch);
         }
 
         public int getLine() {
             return this.line;
         }
 
+        public int getBlock() {
+            return this.block;
+        }
+
+        public int getBranch() {
+            return this.branch;
+        }
+
+        public boolean isBranch() {
+            return this.block >= 0;
+        }
+
         public boolean isHit() {
-            return this.hit;
+            return this.getHits() > 0;
+        }
+
+        public long getHits() {
+            return this.hits.sum() + this.loaded.sum();
+        }
+
+        public long getRunHits() {
+            return this.hits.sum();
+        }
+
+        public long getLoadedHits() {
+            return this.loaded.sum();
+        }
+
+        public Marker addHits(long hits) {
+            this.hits.add(hits);
+            return this;
         }
 
-        public Marker setHit(boolean hit) {
-            this.hit = hit;
+        public Marker addLoaded(long hits) {
+            this.loaded.add(hits);
             return this;
         }
     }
 
-    private final static Map<Plugin, PluginMarker> marks = new HashMap<>();
+    /**
+     * A method and its total hits, used to rank methods by frequency
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private final static class HotMethod {
+
+        private static final Comparator<HotMethod> ORDER = Comparator.comparingLong((HotMethod h) -> h.hits).reversed();
+        private final String plugin;
+        private final String clazz;
+        private final String method;
+        private final long hits;
+
+        public HotMethod(String plugin, String clazz, String method, long hits) {
+            this.plugin = plugin;
+            this.clazz = clazz;
+            this.method = method;
+            this.hits = hits;
+        }
+    }
+
+    /**
+     * Marker totals for a method, class or plugin
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private final static class Summary {
+
+        private final String name;
+        private final List<Summary> children = new ArrayList<>();
+        private final List<Marker> markers = new ArrayList<>();
+        private int expected;
+        private int hit;
+        private int missed;
+        private long hits;
+
+        public Summary(String name) {
+            this.name = name;
+        }
+
+        public void add(Summary child) {
+            this.children.add(child);
+            this.hit += child.hit;
+            this.missed += child.missed;
+            this.hits += child.hits;
+        }
+
+        public String getPercent() {
+            int total = this.hit + this.missed;
+            long basis = total == 0 ? 10000 : this.hit * 10000L / total;
+            long fraction = basis % 100;
+            return basis / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+        }
+
+        @Override
+        public String toString() {
+            return this.hit + "/" + (this.hit + this.missed) + " markers (" + this.getPercent() + "%), " + this.hits + " hits";
+        }
+    }
+
+    private final static Map<Plugin, PluginMarker> marks = new ConcurrentHashMap<>();
+    /** The maximum number of probes, settable through a system property */
+    private final static ProbeCounters probes = new ProbeCounters(CoverageAgent.CAPACITY);
+    /** Counters for the probes inserted by {@link CoverageAgent} */
+    private final static ProbeCounters agentProbes = new ProbeCounters(CoverageAgent.CAPACITY);
+    /** The start of this run, naming the snapshot files it writes */
+    private final static long RUN = System.currentTimeMillis();
+    /** Only one in this many marker calls is recorded */
+    private static volatile int sampleRate = 1;
 
     static {
         Runtime.getRuntime().addShutdownHook(new Thread() {
 
             @Override
             public void run() {
+                CoverageUtil.snapshot();
                 CoverageUtil.marks.entrySet().forEach((ent) -> {
                     try {
                         File data = new File(ent.getKey().getDataFolder(), "coverage" + File.separator);
@@ -298,8 +528,8 @@ public final class CoverageUtil {
                             //rename to creation date
                             Files.move(log, new File(data, "coverage-" + log.lastModified() + ".log"));
                         }
-                        try(FileWriter f = new FileWriter(log)) {
-                            f.write(CoverageUtil.serialize(ent.getValue()));
+                        try (Writer f = new BufferedWriter(new FileWriter(log), 1 << 16)) {
+                            CoverageUtil.writeReport(ent.getValue(), f);
                         }
                     } catch (IOException ex) {}
                 });
@@ -317,16 +547,99 @@ public final class CoverageUtil {
      * from a method context which has the {@link Coverage} annotation
      * 
      * @since 0.0.1
-     * @version 0.0.1
+     * @version 0.3.2
      */
     public static void marker() {
+        int rate = CoverageUtil.sampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return;
+        }
         PluginMarker pm = CoverageUtil.marks.get(ReflectBukkit.getCallingPlugin());
         if (pm != null) {
             StackTraceElement elem = Thread.currentThread().getStackTrace()[2];
-            pm.addValue(elem.getClassName(), elem.getMethodName(), elem.getLineNumber(), true);
+            pm.addValue(elem.getClassName(), elem.getMethodName(), elem.getLineNumber(), rate);
         }
     }
 
+    /**
+     * Notes a point in code where a context has been visited, identified by a
+     * probe id from {@link CoverageUtil#reserveProbes(int)}. Only the first hit
+     * on a probe inspects the stack to find where it is placed, every later
+     * hit costs a single counter increment. Any calls to this method should
+     * come from a method context which has the {@link Coverage} annotation.
+     * Negative ids are reserved for probes inserted by {@link CoverageAgent}
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param id The probe id, unique to this call site
+     * @throws IllegalArgumentException If the id is beyond the probe limit
+     */
+    public static void marker(int id) {
+        int rate = CoverageUtil.sampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return;
+        }
+        if (id < 0) {
+            CoverageUtil.agentProbes.hit(~id, rate);
+        } else if (CoverageUtil.probes.hit(id, rate)) {
+            CoverageUtil.probes.locate(id, Thread.currentThread().getStackTrace()[2]);
+        }
+    }
+
+    /**
+     * Reserves a range of consecutive probe ids for use with
+     * {@link CoverageUtil#marker(int)}, typically stored in a static constant
+     * of the calling class. A class which reserves again, such as when its
+     * plugin is reloaded, receives the same range, or a fresh one if it now
+     * asks for more probes than before
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param count The number of probes in the calling class
+     * @return The first reserved probe id
+     * @throws IllegalArgumentException If {@code count} is negative
+     * @throws IllegalStateException If the probe limit has been reached, which
+     *                               can be raised with the
+     *                               {@code codelanxlib.coverage.probes} system
+     *                               property
+     */
+    public static int reserveProbes(int count) {
+        String owner = Thread.currentThread().getStackTrace()[2].getClassName();
+        return CoverageUtil.probes.reserve(owner, ReflectBukkit.getCallingPlugin(), count);
+    }
+
+    /**
+     * Sets how often marker calls are recorded. At a rate of {@code n}, each
+     * call is recorded with a chance of one in {@code n} and counted as
+     * {@code n} hits, so hit counts stay unbiased estimates while most calls
+     * return after a single random draw. A rate of 1, the default, records
+     * every hit, and a higher rate suits profiling hot paths in production
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param rate The sampling rate, at least 1
+     */
+    public static void setSampleRate(int rate) {
+        Exceptions.isTrue(rate >= 1, "Sample rate must be at least 1", IllegalArgumentException.class);
+        CoverageUtil.sampleRate = rate;
+    }
+
+    /**
+     * Returns how often marker calls are recorded
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @see CoverageUtil#setSampleRate(int)
+     * @return The sampling rate, where 1 records every hit
+     */
+    public static int getSampleRate() {
+        return CoverageUtil.sampleRate;
+    }
+
     /**
      * Registers classes that use {@link CoverageUtil}
      * 
@@ -337,33 +650,61 @@ public final class CoverageUtil {
      */
     public static void registerClasses(Class<?>... classes) {
         Plugin p = ReflectBukkit.getCallingPlugin();
-        PluginMarker pm = CoverageUtil.marks.get(p);
-        if (pm != null) {
-            Collection<ClassMarker> o = new PluginMarker(p, classes).getClassMarkers();
-            pm.addMarks(o.toArray(new ClassMarker[o.size()]));
-        } else {
-            CoverageUtil.marks.put(p, new PluginMarker(p, classes));
+        PluginMarker pm = new PluginMarker(p, classes);
+        PluginMarker curr = CoverageUtil.marks.putIfAbsent(p, pm);
+        if (curr != null) {
+            Collection<ClassMarker> o = pm.getClassMarkers();
+            curr.addMarks(o.toArray(new ClassMarker[o.size()]));
         }
     } 
 
     /**
      * Loads a previous {@link CoverageUtil} report from the respective
-     * {@link Plugin} folder
+     * {@link Plugin} folder. Every snapshot of earlier runs is read if any
+     * exist, otherwise the latest text report. Loaded hits are shown in
+     * reports, but kept apart from the hits of this run, so they are never
+     * written to this run's snapshot
      * 
      * @since 0.0.1
-     * @version 0.0.1
+     * @version 0.3.2
      */
     public static void load() {
         Plugin p = ReflectBukkit.getCallingPlugin();
         File data = new File(p.getDataFolder(), "coverage" + File.separator);
         File log = new File(data, "coverage-latest.log");
-        if (log.exists()) {
+        List<File> snapshots = CoverageMerge.findSnapshots(data);
+        snapshots.remove(CoverageUtil.getSnapshotFile(p));
+        if (!snapshots.isEmpty()) {
+            PluginMarker pm = new PluginMarker(p);
+            for (File snap : snapshots) {
+                try (CoverageSnapshot.Reader in = CoverageSnapshot.read(snap)) {
+                    CoverageSnapshot.Entry e;
+                    while ((e = in.next()) != null) {
+                        if (e.isExpected()) {
+                            pm.addMarks(new ClassMarker(e.getClassName()).addMarks(new MethodMarker(e.getMethod(), (int) e.getHits())));
+                        } else if (e.isBranch()) {
+                            pm.addLoadedBranch(e.getClassName(), e.getMethod(), e.getLine(), e.getBlock(), e.getBranch(), e.getHits());
+                        } else {
+                            pm.addLoaded(e.getClassName(), e.getMethod(), e.getLine(), e.getHits());
+                        }
+                    }
+                } catch (IOException ex) {
+                    Debugger.error(ex, "Error reading coverage snapshot '%s' for plugin '%s'", snap, p.getName());
+                }
+            }
+            PluginMarker curr = CoverageUtil.marks.putIfAbsent(p, pm);
+            if (curr != null) {
+                curr.addMarks(pm.getClassMarkers().toArray(new ClassMarker[pm.getClassMarkers().size()]));
+            }
+        } else if (log.exists()) {
             try(FileReader f = new FileReader(log); BufferedReader rd = new BufferedReader(f)) {
                 PluginMarker pm = CoverageUtil.deserialize(rd);
-                PluginMarker curr = CoverageUtil.marks.get(p);
-                if (curr == null) {
-                    CoverageUtil.marks.put(p, pm);
-                } else {
+                if (pm == null) {
+                    Logging.simple().print(Level.WARNING, "No coverage values found in the latest log for plugin '%s'", p.getName());
+                    return;
+                }
+                PluginMarker curr = CoverageUtil.marks.putIfAbsent(p, pm);
+                if (curr != null) {
                     curr.addMarks(pm.getClassMarkers().toArray(new ClassMarker[pm.getClassMarkers().size()]));
                 }
                 /*CoverageUtil.marks.get(p).getClassMarkers().forEach((c) -> {
@@ -378,76 +719,333 @@ public final class CoverageUtil {
     }
 
     /**
-     * Prints out the current {@link CoverageUtil} report to the console
+     * Writes the coverage of every plugin to a binary {@link CoverageSnapshot}
+     * in its coverage folder. Each run writes to its own file, which is
+     * replaced atomically on every call, so a crash loses at most the hits
+     * since the last snapshot. Snapshots of many runs and servers can be
+     * combined with {@link CoverageMerge}. A snapshot only holds the hits of
+     * this run, never coverage read by {@link CoverageUtil#load()}, so every
+     * snapshot in a coverage folder can be merged together
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static synchronized void snapshot() {
+        CoverageUtil.collectProbes();
+        CoverageUtil.marks.forEach((p, pm) -> {
+            File file = CoverageUtil.getSnapshotFile(p);
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                file.getParentFile().mkdirs();
+                try (CoverageSnapshot.Writer out = CoverageSnapshot.write(temp, p.getName(), System.currentTimeMillis())) {
+                    CoverageUtil.writeSnapshot(pm, out);
+                }
+                java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Debugger.error(ex, "Error writing coverage snapshot for plugin '%s'", p.getName());
+            }
+        });
+    }
+
+    /**
+     * Periodically writes coverage snapshots on the {@link Scheduler} service
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @see CoverageUtil#snapshot()
+     * @param interval Time (in seconds) between snapshots
+     * @return The scheduled task writing the snapshots
+     */
+    public static ScheduledFuture<?> autosave(long interval) {
+        return Scheduler.runAsyncTaskRepeat(CoverageUtil::snapshot, interval, interval);
+    }
+
+    /**
+     * Prints a summary of the current {@link CoverageUtil} report to the
+     * console, with one line per plugin and class
      * 
      * @since 0.0.1
-     * @version 0.0.1
+     * @version 0.3.2
      */
     public static void reportAll() {
+        CoverageUtil.reportAll(false);
+    }
+
+    /**
+     * Prints a summary of the current {@link CoverageUtil} report to the
+     * console, with one line per plugin and class, and optionally per method
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param methods {@code true} to also print a line for each method
+     */
+    public static void reportAll(boolean methods) {
+        CoverageUtil.collectProbes();
         Logging.simple().print("Current coverage report:");
         CoverageUtil.marks.values().forEach((pm) -> {
-            pm.getClassMarkers().forEach((c) -> {
-                c.getMethodMarkers().forEach((m) -> {
-                    m.getMarkers().forEach((mk) -> {
-                        Logging.simple().print("Plugin: %s\n\tClass: %s\n\tMethod: %s\n\tLine: %d\n\tValue: %B\n", pm.name, c.getName(), m.getName(), mk.getLine(), mk.isHit());
-                    });
-                });
+            Summary plugin = CoverageUtil.summarize(pm);
+            Logging.simple().print("%s: %s", plugin.name, plugin);
+            plugin.children.forEach((c) -> {
+                Logging.simple().print("  %s: %s", c.name, c);
+                if (methods) {
+                    c.children.forEach((m) -> Logging.simple().print("    %s: %s", m.name, m));
+                }
             });
         });
     }
     
-    private static String serialize(PluginMarker mark) {
-        StringBuilder sb = new StringBuilder("====================");
-        for (int i = mark.getPlugin().getName().length(); i > 0; i--) {
-            sb.append('=');
-        }
-        sb.append('\n');
-        sb.append("COVERAGE REPORT FOR ");
-        sb.append(mark.getPlugin().getName());
-        sb.append('\n');
-        sb.append("====================");
-        for (int i = mark.getPlugin().getName().length(); i > 0; i--) {
-            sb.append('=');
-        }
-        sb.append("\n\n");
-        StringBuilder mb = new StringBuilder();
-        mb.append("Hit markers [ class;method;line-number ]:\n");
-        StrongReference<Integer> hit = new StrongReference<>(0);
-        mark.getClassMarkers().forEach((c) -> {
-            c.getMethodMarkers().forEach((m) -> {
-                m.getMarkers().stream().filter(m::isHit).forEach((mk) -> {
-                    mb.append(String.format("%s;%s;%d\n", c.getName(), m.getName(), mk.getLine()));
-                    hit.setValue(hit.getValue() + 1);
-                });
-            });
-        });
-        mb.append('\n');
-        mb.append("Missed markers [ class;method;missed-amount ]:\n");
-        StrongReference<Integer> missed = new StrongReference<>(0);
-        mark.getClassMarkers().forEach((c) -> {
-            c.getMethodMarkers().forEach((m) -> {
-                mb.append(String.format("%s;%s;%d\n", c.getName(), m.getName(), m.getMissed()));
-                missed.setValue(missed.getValue() + m.getMissed());
-            });
+    /**
+     * Prints the methods with the most hits across every plugin to the
+     * console, most frequent first
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param count The maximum number of methods to print
+     */
+    public static void reportHottest(int count) {
+        CoverageUtil.collectProbes();
+        Logging.simple().print("Hottest methods (sample rate 1/%d):", CoverageUtil.sampleRate);
+        CoverageUtil.marks.values().stream().flatMap(pm -> pm.getClassMarkers().stream().flatMap(c -> {
+            return c.getMethodMarkers().stream().map(m -> new HotMethod(pm.name, c.getName(), m.getName(), m.getHits()));
+        })).filter(h -> h.hits > 0).sorted(HotMethod.ORDER).limit(count).forEach(h -> {
+            Logging.simple().print("%d\t%s: %s#%s", h.hits, h.plugin, h.clazz, h.method);
         });
-        mb.append('\n');
-        mb.append("=== BELOW THIS LINE IS FOR DESERIALIZATION - DO NOT MODIFY ===\n");
-        mb.append("Parsables [ plugin;class;method;line;is_hit|missed_count ]:");
-        mark.getClassMarkers().forEach((c) -> {
-            c.getMethodMarkers().forEach((m) -> {
-                mb.append(String.format("\n%s;%s;%s;%d;%d", mark.getPlugin().getName(), c.getName(), m.getName(), -1, m.getNumber()));
-                m.getMarkers().stream().forEach((mk) -> {
-                    mb.append(String.format("\n%s;%s;%s;%d;%B", mark.getPlugin().getName(), c.getName(), m.getName(), mk.getLine(), mk.isHit()));
+    }
+
+    /**
+     * Resolves every hit probe to its class, method and line, and marks it on
+     * the registered classes of the plugin that reserved it. Probes inserted
+     * by {@link CoverageAgent} are marked on whichever plugin registered their
+     * class, and raise the expected marker count of their method to the
+     * number of lines probed. As their lines are known up front, agent probes
+     * are marked even when never hit, so reports and snapshots list the
+     * missed lines as well. Agent branch probes are kept apart from the
+     * lines, and never count towards the expected markers
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    private static void collectProbes() {
+        if (CoverageAgent.isLoaded()) {
+            CoverageUtil.marks.values().forEach(pm -> pm.getClassMarkers().forEach(c -> {
+                c.getMethodMarkers().forEach(m -> m.expect(CoverageAgent.getLineCount(c.getName(), m.getName())));
+            }));
+            for (int id = 0; id < CoverageAgent.getProbeCount(); id++) {
+                long hits = CoverageUtil.agentProbes.drain(id);
+                CoverageAgent.Probe probe = CoverageAgent.getProbe(id);
+                CoverageUtil.marks.values().stream().filter(pm -> pm.hasClass(probe.getClassName())).forEach(pm -> {
+                    if (probe.isBranch()) {
+                        pm.addBranch(probe.getClassName(), probe.getMethod(), probe.getLine(), probe.getBlock(), probe.getBranch(), hits);
+                    } else {
+                        pm.addValue(probe.getClassName(), probe.getMethod(), probe.getLine(), hits);
+                    }
                 });
+            }
+        }
+        for (int id = 0; id < CoverageUtil.probes.size(); id++) {
+            StackTraceElement loc = CoverageUtil.probes.getLocation(id);
+            if (loc == null) {
+                continue;
+            }
+            long hits = CoverageUtil.probes.drain(id);
+            Plugin owner = CoverageUtil.probes.getOwner(id);
+            if (owner == null) {
+                continue; //hit without being reserved
+            }
+            PluginMarker pm = CoverageUtil.marks.get(owner);
+            if (pm != null && hits > 0) {
+                pm.addValue(loc.getClassName(), loc.getMethodName(), loc.getLineNumber(), hits);
+            }
+        }
+    }
+
+    /**
+     * Writes the text report for a plugin straight to a {@link Writer}. All
+     * totals are gathered in a single pass over the markers beforehand, so no
+     * part of the report is built in memory
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param mark The {@link PluginMarker} to report on
+     * @param out The {@link Writer} to write to, which should be buffered
+     * @throws IOException If the report could not be written
+     */
+    private static void writeReport(PluginMarker mark, Writer out) throws IOException {
+        Summary total = CoverageUtil.summarize(mark);
+        StringBuilder banner = new StringBuilder("====================");
+        for (int i = mark.name.length(); i > 0; i--) {
+            banner.append('=');
+        }
+        banner.append('\n');
+        out.write(banner.toString());
+        out.write("COVERAGE REPORT FOR " + mark.name + "\n");
+        out.write(banner.toString());
+        out.write('\n');
+        out.write("Hit markers: " + total.hit + "\n");
+        out.write("Missed markers: " + total.missed + "\n");
+        out.write("Coverage percent: " + total.getPercent() + "%\n");
+        out.write("Total hits: " + total.hits + "\n");
+        long branches = mark.getClassMarkers().stream().flatMap(c -> c.getMethodMarkers().stream()).mapToLong(m -> m.getBranches().size()).sum();
+        if (branches > 0) {
+            long hitBranches = mark.getClassMarkers().stream().flatMap(c -> c.getMethodMarkers().stream())
+                    .flatMap(m -> m.getBranches().stream()).filter(Marker::isHit).count();
+            out.write("Hit branches: " + hitBranches + "/" + branches + "\n");
+        }
+        out.write('\n');
+        out.write("Class summary [ class;hit-markers;missed-markers;percent;hits ]:\n");
+        for (Summary c : total.children) {
+            CoverageUtil.writeLine(out, c.name, c.hit, c.missed, c.getPercent(), c.hits);
+        }
+        out.write('\n');
+        out.write("Method summary [ class;method;hit-markers;missed-markers;percent;hits ]:\n");
+        for (Summary c : total.children) {
+            for (Summary m : c.children) {
+                CoverageUtil.writeLine(out, c.name, m.name, m.hit, m.missed, m.getPercent(), m.hits);
+            }
+        }
+        out.write('\n');
+        out.write("Hit markers [ class;method;line-number;hits ]:\n");
+        for (Summary c : total.children) {
+            for (Summary m : c.children) {
+                for (Marker mk : m.markers) {
+                    if (mk.isHit()) {
+                        CoverageUtil.writeLine(out, c.name, m.name, mk.getLine(), mk.getHits());
+                    }
+                }
+            }
+        }
+        out.write('\n');
+        out.write("Missed markers [ class;method;missed-amount ]:\n");
+        for (Summary c : total.children) {
+            for (Summary m : c.children) {
+                CoverageUtil.writeLine(out, c.name, m.name, m.missed);
+            }
+        }
+        out.write('\n');
+        out.write("Hottest methods [ class;method;hits ]:\n");
+        List<HotMethod> hot = new ArrayList<>();
+        for (Summary c : total.children) {
+            for (Summary m : c.children) {
+                if (m.hits > 0) {
+                    hot.add(new HotMethod(mark.name, c.name, m.name, m.hits));
+                }
+            }
+        }
+        hot.sort(HotMethod.ORDER);
+        for (HotMethod h : hot) {
+            CoverageUtil.writeLine(out, h.clazz, h.method, h.hits);
+        }
+        out.write('\n');
+        out.write("=== BELOW THIS LINE IS FOR DESERIALIZATION - DO NOT MODIFY ===\n");
+        out.write("Parsables [ plugin;class;method;line;hits|missed_count ]:\n");
+        for (Summary c : total.children) {
+            for (Summary m : c.children) {
+                CoverageUtil.writeLine(out, mark.name, c.name, m.name, -1, m.expected);
+                for (Marker mk : m.markers) {
+                    CoverageUtil.writeLine(out, mark.name, c.name, m.name, mk.getLine(), mk.getHits());
+                }
+            }
+        }
+    }
+
+    private static void writeLine(Writer out, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(';');
+            }
+            out.write(String.valueOf(values[i]));
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Totals the markers of a plugin by class and method, in name order
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param mark The {@link PluginMarker} to total
+     * @return A {@link Summary} of the plugin, holding one per class
+     */
+    private static Summary summarize(PluginMarker mark) {
+        Summary plugin = new Summary(mark.name);
+        mark.getClassMarkers().stream().sorted(Comparator.comparing(ClassMarker::getName)).forEach(c -> {
+            Summary cs = new Summary(c.getName());
+            c.getMethodMarkers().stream().sorted(Comparator.comparing(MethodMarker::getName)).forEach(m -> {
+                Summary ms = new Summary(m.getName());
+                ms.expected = m.getNumber();
+                for (Marker mk : m.getMarkers()) {
+                    long hits = mk.getHits();
+                    if (hits > 0) {
+                        ms.hit++;
+                    }
+                    ms.hits += hits;
+                    ms.markers.add(mk);
+                }
+                ms.missed = Math.max(0, m.getMissed());
+                cs.add(ms);
             });
+            plugin.add(cs);
         });
-        sb.append("Hit markers: ").append(hit.getValue()).append('\n');
-        sb.append("Missed markers: ").append(missed.getValue()).append('\n');
-        sb.append("Coverage percent: ").append(String.format("%.2f", ((double) hit.getValue())
-                / ((double) (hit.getValue() + missed.getValue())) * 100)).append("%\n");
-        sb.append('\n');
-        sb.append(mb);
-        return sb.toString();
+        return plugin;
+    }
+
+    private static File getSnapshotFile(Plugin p) {
+        return new File(p.getDataFolder(), "coverage" + File.separator + "snapshot-" + CoverageUtil.RUN + CoverageMerge.EXTENSION);
+    }
+
+    /**
+     * Writes the markers of a plugin in the sorted order snapshots require
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param mark The {@link PluginMarker} to write
+     * @param out The {@link CoverageSnapshot.Writer} to write to
+     * @throws IOException If the snapshot could not be written
+     */
+    private static void writeSnapshot(PluginMarker mark, CoverageSnapshot.Writer out) throws IOException {
+        Map<String, ClassMarker> classes = new TreeMap<>();
+        mark.getClassMarkers().forEach(c -> classes.put(c.getName(), c));
+        for (ClassMarker c : classes.values()) {
+            Map<String, MethodMarker> methods = new TreeMap<>();
+            c.getMethodMarkers().forEach(m -> methods.put(m.getName(), m));
+            for (MethodMarker m : methods.values()) {
+                out.write(new CoverageSnapshot.Entry(c.getName(), m.getName(), CoverageSnapshot.EXPECTED, m.getNumber()));
+                List<CoverageSnapshot.Entry> entries = new ArrayList<>();
+                m.getMarkers().stream().filter(mk -> mk.getLine() > 0).forEach(mk -> {
+                    entries.add(new CoverageSnapshot.Entry(c.getName(), m.getName(), mk.getLine(), mk.getRunHits()));
+                });
+                m.getBranches().forEach(mk -> {
+                    entries.add(new CoverageSnapshot.Entry(c.getName(), m.getName(), mk.getLine(), mk.getBlock(), mk.getBranch(), mk.getRunHits()));
+                });
+                entries.sort(CoverageSnapshot::compare);
+                for (CoverageSnapshot.Entry e : entries) {
+                    out.write(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the hit count of a marker, which older reports saved as a boolean
+     * 
+     * @since 0.3.2
+     * @version 0.3.2
+     * 
+     * @param value The saved value
+     * @return The number of hits
+     * @throws NumberFormatException If the value is not a count or boolean
+     */
+    private static long parseHits(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value) ? 1 : 0;
+        }
+        return Long.parseLong(value);
     }
 
     private static PluginMarker deserialize(BufferedReader br) throws IOException {
@@ -472,7 +1070,7 @@ public final class CoverageUtil {
                 if (li <= 0) {
                     pm.addMarks(new ClassMarker(tokens[1]).addMarks(new MethodMarker(tokens[2], Integer.parseInt(tokens[4]))));
                 } else {
-                    pm.addValue(tokens[1], tokens[2], li, Boolean.valueOf(tokens[4]));
+                    pm.addLoaded(tokens[1], tokens[2], li, CoverageUtil.parseHits(tokens[4]));
                 }
             } catch (NumberFormatException ex) {
                 Debugger.print(Level.WARNING, "Bad coverage value found, skipping");
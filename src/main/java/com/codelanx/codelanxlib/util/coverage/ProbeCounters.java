@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.coverage;
+
+import com.codelanx.commons.util.exception.Exceptions;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Preallocated hit counters for {@link CoverageUtil#marker(int)} probes. Each
+ * probe has one counter per stripe, and a thread only ever increments the
+ * counter of its own stripe, so concurrent hits on a probe rarely contend.
+ * The location of a probe is captured once, on its first hit, and everything
+ * else is resolved when a report is made
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class ProbeCounters {
+
+    private final int capacity;
+    private final int stripeMask;
+    /** Counters laid out stripe by stripe, so a stripe's probes are adjacent */
+    private final AtomicLongArray counters;
+    private final AtomicReferenceArray<StackTraceElement> locations;
+    /** The total hits of each probe as of its last drain */
+    private final long[] drained;
+    /** The first probe of each reserved range mapped to the owning plugin */
+    private final TreeMap<Integer, Plugin> owners = new TreeMap<>();
+    /** The range reserved by each registering class */
+    private final Map<String, Range> reserved = new HashMap<>();
+    private int next = 0;
+
+    /**
+     * Allocates the counters for a fixed number of probes
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param capacity The maximum number of probes
+     */
+    ProbeCounters(int capacity) {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        if (stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        this.capacity = capacity;
+        this.stripeMask = stripes - 1;
+        this.counters = new AtomicLongArray(capacity * stripes);
+        this.locations = new AtomicReferenceArray<>(capacity);
+        this.drained = new long[capacity];
+    }
+
+    /**
+     * Reserves a range of probe ids for a class. Reserving again from the same
+     * class, such as after a plugin reload, returns the same range unless more
+     * probes are asked for than before, in which case a fresh range is
+     * reserved
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param owner The class the probes are placed in
+     * @param plugin The {@link Plugin} the class belongs to
+     * @param count The number of probes to reserve
+     * @return The first probe id of the range
+     * @throws IllegalArgumentException If {@code count} is negative
+     * @throws IllegalStateException If the probe limit would be exceeded
+     */
+    synchronized int reserve(String owner, Plugin plugin, int count) {
+        Exceptions.isTrue(count >= 0, "Cannot reserve a negative number of probes", IllegalArgumentException.class);
+        Range range = this.reserved.get(owner);
+        if (range == null || range.count < count) {
+            Exceptions.isTrue(count <= this.capacity - this.next,
+                    "Cannot reserve " + count + " more coverage probes, the limit is " + this.capacity,
+                    IllegalStateException.class);
+            range = new Range(this.next, count);
+            this.next += count;
+            this.reserved.put(owner, range);
+        }
+        if (count > 0) {
+            this.owners.put(range.base, plugin);
+        }
+        return range.base;
+    }
+
+    /**
+     * Records hits on a probe
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @param hits The number of hits to record, more than one when sampling
+     * @return {@code true} if the location of the probe is not yet known
+     * @throws IllegalArgumentException If the id is outside of the capacity
+     */
+    boolean hit(int id, int hits) {
+        if (id < 0 || id >= this.capacity) {
+            //checked here, as an id past the end would land in another stripe
+            throw new IllegalArgumentException("Probe id " + id + " is out of range, the limit is " + this.capacity);
+        }
+        int stripe = (int) Thread.currentThread().getId() & this.stripeMask;
+        this.counters.getAndAdd(stripe * this.capacity + id, hits);
+        return this.locations.get(id) == null;
+    }
+
+    /**
+     * Records where a probe is placed, if not already known
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @param location The {@link StackTraceElement} of the call site
+     */
+    void locate(int id, StackTraceElement location) {
+        this.locations.compareAndSet(id, null, location);
+    }
+
+    /**
+     * Returns the number of times a probe was hit
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @return The total hits across all stripes
+     */
+    long count(int id) {
+        long back = 0;
+        for (int s = 0; s <= this.stripeMask; s++) {
+            back += this.counters.get(s * this.capacity + id);
+        }
+        return back;
+    }
+
+    /**
+     * Returns the hits on a probe since it was last drained, so that repeated
+     * reports never count a hit twice
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @return The number of new hits
+     */
+    synchronized long drain(int id) {
+        long total = this.count(id);
+        long back = total - this.drained[id];
+        this.drained[id] = total;
+        return back;
+    }
+
+    /**
+     * Returns where a probe is placed
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @return The call site, or {@code null} if the probe was never hit
+     */
+    StackTraceElement getLocation(int id) {
+        return this.locations.get(id);
+    }
+
+    /**
+     * Returns the plugin which reserved a probe
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @return The owning {@link Plugin}, or {@code null} if unreserved
+     */
+    synchronized Plugin getOwner(int id) {
+        Map.Entry<Integer, Plugin> e = this.owners.floorEntry(id);
+        return e == null || id >= this.next ? null : e.getValue();
+    }
+
+    /**
+     * Returns the number of probe ids reserved so far
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of reserved probes
+     */
+    synchronized int size() {
+        return this.next;
+    }
+
+    /**
+     * A range of probe ids reserved by a single class
+     *
+     * @since 0.3.2
+     * @author 1Rogue
+     * @version 0.3.2
+     */
+    private static final class Range {
+
+        private final int base;
+        private final int count;
+
+        private Range(int base, int count) {
+            this.base = base;
+            this.count = count;
+        }
+
+    }
+
+}
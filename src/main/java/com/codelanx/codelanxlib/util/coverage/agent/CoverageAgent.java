@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.coverage.agent;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An optional java agent which inserts coverage probes into every method
+ * annotated with {@code CoverageUtil.Coverage} as its class is loaded. A
+ * probe is placed at the start of each source line, and on both outcomes of
+ * each conditional jump and every target of each switch. Each calls
+ * {@code CoverageUtil.marker(int)} with an id whose location is known up
+ * front, so no manual markers are needed.
+ * <br><br>
+ * The agent is built as a separate jar with the {@code agent} classifier, and
+ * is enabled by starting the server with
+ * {@code -javaagent:CodelanxLib-vX-agent.jar}. It is loaded from the system
+ * class path, where CodelanxLib reads the probe registry from this class
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public final class CoverageAgent {
+
+    /** The maximum number of probes, shared with CoverageUtil */
+    public static final int CAPACITY = Integer.getInteger("codelanxlib.coverage.probes", 16384);
+    private static final List<Probe> probes = new ArrayList<>();
+    /** Class names mapped to method names mapped to probed lines and their ids */
+    private static final Map<String, Map<String, Map<Integer, Integer>>> lines = new HashMap<>();
+    /** Class names mapped to method names mapped to probed branches and their ids */
+    private static final Map<String, Map<String, Map<Long, Integer>>> branches = new HashMap<>();
+    private static volatile boolean loaded = false;
+
+    private CoverageAgent() {
+    }
+
+    /**
+     * Entry point when started with {@code -javaagent}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param args The agent arguments, unused
+     * @param inst The {@link Instrumentation} provided by the JVM
+     */
+    public static void premain(String args, Instrumentation inst) {
+        inst.addTransformer(new CoverageTransformer());
+        CoverageAgent.loaded = true;
+    }
+
+    /**
+     * Entry point when attached to a running JVM. Only classes loaded after
+     * attaching are instrumented
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param args The agent arguments, unused
+     * @param inst The {@link Instrumentation} provided by the JVM
+     */
+    public static void agentmain(String args, Instrumentation inst) {
+        CoverageAgent.premain(args, inst);
+    }
+
+    /**
+     * Returns whether the agent is instrumenting classes in this JVM
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return {@code true} if the agent was started
+     */
+    public static boolean isLoaded() {
+        return CoverageAgent.loaded;
+    }
+
+    /**
+     * Assigns an id to a probe. A line which was already probed, such as when
+     * a plugin is reloaded and its classes are transformed again, keeps its
+     * id
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param className The binary name of the probed class
+     * @param method The name of the probed method
+     * @param line The probed line
+     * @return The probe id, or -1 if the probe limit has been reached
+     */
+    static synchronized int register(String className, String method, int line) {
+        Map<Integer, Integer> ids = CoverageAgent.lines.computeIfAbsent(className, k -> new HashMap<>())
+                .computeIfAbsent(method, k -> new HashMap<>());
+        Integer id = ids.get(line);
+        if (id != null) {
+            return id;
+        }
+        if (CoverageAgent.probes.size() >= CAPACITY) {
+            return -1;
+        }
+        CoverageAgent.probes.add(new Probe(className, method, line, -1, -1));
+        id = CoverageAgent.probes.size() - 1;
+        ids.put(line, id);
+        return id;
+    }
+
+    /**
+     * Assigns an id to one outcome of a branch. Branch points are numbered in
+     * the order they occur on their line, so a class transformed again keeps
+     * the same ids
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param className The binary name of the probed class
+     * @param method The name of the probed method
+     * @param line The line of the branch point
+     * @param block The index of the branch point within its line
+     * @param branch The index of the outcome within its branch point
+     * @return The probe id, or -1 if the probe limit has been reached
+     */
+    static synchronized int registerBranch(String className, String method, int line, int block, int branch) {
+        Map<Long, Integer> ids = CoverageAgent.branches.computeIfAbsent(className, k -> new HashMap<>())
+                .computeIfAbsent(method, k -> new HashMap<>());
+        long key = ((long) line << 32) | ((long) block << 16) | branch;
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (CoverageAgent.probes.size() >= CAPACITY) {
+            return -1;
+        }
+        CoverageAgent.probes.add(new Probe(className, method, line, block, branch));
+        id = CoverageAgent.probes.size() - 1;
+        ids.put(key, id);
+        return id;
+    }
+
+    /**
+     * Returns the number of probes inserted so far
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of probes
+     */
+    public static synchronized int getProbeCount() {
+        return CoverageAgent.probes.size();
+    }
+
+    /**
+     * Returns a probe by its id
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param id The probe id
+     * @return The relevant {@link Probe}
+     */
+    public static synchronized Probe getProbe(int id) {
+        return CoverageAgent.probes.get(id);
+    }
+
+    /**
+     * Returns the number of lines probed in a method. Overloaded methods are
+     * counted together
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param className The binary name of the class
+     * @param method The name of the method
+     * @return The number of probed lines
+     */
+    public static synchronized int getLineCount(String className, String method) {
+        Map<String, Map<Integer, Integer>> methods = CoverageAgent.lines.get(className);
+        Map<Integer, Integer> back = methods == null ? null : methods.get(method);
+        return back == null ? 0 : back.size();
+    }
+
+    /**
+     * The location of a single probe, either at the start of a line or on one
+     * outcome of a branch
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     */
+    public static final class Probe {
+
+        private final String className;
+        private final String method;
+        private final int line;
+        private final int block;
+        private final int branch;
+
+        private Probe(String className, String method, int line, int block, int branch) {
+            this.className = className;
+            this.method = method;
+            this.line = line;
+            this.block = block;
+            this.branch = branch;
+        }
+
+        /**
+         * Returns the binary name of the probed class
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The class name
+         */
+        public String getClassName() {
+            return this.className;
+        }
+
+        /**
+         * Returns the name of the probed method
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The method name
+         */
+        public String getMethod() {
+            return this.method;
+        }
+
+        /**
+         * Returns the probed line
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The line number
+         */
+        public int getLine() {
+            return this.line;
+        }
+
+        /**
+         * Returns whether this probe counts one outcome of a branch, rather
+         * than the start of a line
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return {@code true} for a branch probe
+         */
+        public boolean isBranch() {
+            return this.block >= 0;
+        }
+
+        /**
+         * Returns the index of the probed branch point within its line
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The block index, or -1 for a line probe
+         */
+        public int getBlock() {
+            return this.block;
+        }
+
+        /**
+         * Returns the index of the probed outcome within its branch point.
+         * For a conditional jump, 0 is the jump being taken and 1 is falling
+         * through. For a switch, 0 is the default and each distinct case
+         * target follows in order
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @return The branch index, or -1 for a line probe
+         */
+        public int getBranch() {
+            return this.branch;
+        }
+
+    }
+
+}
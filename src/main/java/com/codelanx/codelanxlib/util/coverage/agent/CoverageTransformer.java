@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.coverage.agent;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.nio.charset.StandardCharsets;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts a call to {@code CoverageUtil.marker(int)} at the start of each
+ * source line of methods annotated with {@code CoverageUtil.Coverage}. Probes
+ * are placed after any stack map frame of the line, and use no locals, so
+ * existing frames stay valid and only the maximum stack size is recomputed.
+ * <br><br>
+ * Branches are probed as well. The fall through of a conditional jump is
+ * probed directly after it, while the jump itself, and every target of a
+ * switch, is redirected to a stub at the end of the method which calls its
+ * probe and jumps on to the original target. Each stub repeats the stack map
+ * frame of its target, which is why frames are read expanded, so no frames
+ * have to be computed and no classes are loaded during transformation
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class CoverageTransformer implements ClassFileTransformer {
+
+    private static final String COVERAGE_UTIL = "com/codelanx/codelanxlib/util/coverage/CoverageUtil";
+    private static final String COVERAGE = "L" + COVERAGE_UTIL + "$Coverage;";
+    private static final byte[] COVERAGE_BYTES = COVERAGE.getBytes(StandardCharsets.UTF_8);
+    private boolean warned = false;
+
+    /**
+     * Instruments the class if any of its methods are annotated with
+     * {@code CoverageUtil.Coverage}
+     * <br><br> {@inheritDoc}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param loader {@inheritDoc}
+     * @param className {@inheritDoc}
+     * @param redefined {@inheritDoc}
+     * @param domain {@inheritDoc}
+     * @param buffer {@inheritDoc}
+     * @return The instrumented class, or {@code null} to leave it unchanged
+     */
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> redefined, ProtectionDomain domain, byte[] buffer) {
+        //Skip the bootstrap loader and any class which never names the annotation
+        if (loader == null || className == null || !CoverageTransformer.contains(buffer, COVERAGE_BYTES)) {
+            return null;
+        }
+        try {
+            ClassReader reader = new ClassReader(buffer);
+            ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+            ProbeClassVisitor visitor = new ProbeClassVisitor(writer, className.replace('/', '.'));
+            reader.accept(visitor, ClassReader.EXPAND_FRAMES);
+            return visitor.probed ? writer.toByteArray() : null;
+        } catch (RuntimeException ex) {
+            //Never fail class loading over coverage
+            System.err.println("[CodelanxLib] Unable to instrument " + className + " for coverage: " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether a byte sequence occurs in a class file, as a cheap test
+     * for whether the constant pool references a name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param data The class file
+     * @param target The bytes to look for
+     * @return {@code true} if {@code target} occurs in {@code data}
+     */
+    private static boolean contains(byte[] data, byte[] target) {
+        outer:
+        for (int i = 0; i <= data.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private final class ProbeClassVisitor extends ClassVisitor {
+
+        private final String className;
+        private boolean probed = false;
+
+        private ProbeClassVisitor(ClassVisitor next, String className) {
+            super(Opcodes.ASM5, next);
+            this.className = className;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+            return mv == null ? null : new ProbeMethodVisitor(mv, this, name);
+        }
+
+    }
+
+    private final class ProbeMethodVisitor extends MethodVisitor {
+
+        private final ProbeClassVisitor owner;
+        private final String method;
+        /** Probe ids of this method by line, so a revisited line shares its probe */
+        private final Map<Integer, Integer> ids = new HashMap<>();
+        /** The number of branch points seen so far on each line */
+        private final Map<Integer, Integer> blocks = new HashMap<>();
+        /** The stack map frame of each label which has one, as {locals, stack} */
+        private final Map<Label, Object[][]> frames = new HashMap<>();
+        /** Labels visited since the last instruction, which share its frame */
+        private final List<Label> labels = new ArrayList<>();
+        private final List<Stub> stubs = new ArrayList<>();
+        private boolean enabled = false;
+        private int pending = -1;
+        private int line = -1;
+
+        private ProbeMethodVisitor(MethodVisitor next, ProbeClassVisitor owner, String method) {
+            super(Opcodes.ASM5, next);
+            this.owner = owner;
+            this.method = method;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            if (COVERAGE.equals(desc)) {
+                this.enabled = true;
+            }
+            return super.visitAnnotation(desc, visible);
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            super.visitLineNumber(line, start);
+            this.line = line;
+            if (this.enabled) {
+                this.pending = line;
+            }
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            super.visitLabel(label);
+            this.labels.add(label);
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            super.visitFrame(type, nLocal, local, nStack, stack);
+            //the reader reuses these arrays, so they must be copied
+            Object[][] frame = { Arrays.copyOf(local, nLocal), Arrays.copyOf(stack, nStack) };
+            this.labels.forEach(l -> this.frames.put(l, frame));
+        }
+
+        /**
+         * Emits the probe for the current line, if it has not been emitted.
+         * This is deferred to the first instruction of the line, as the frame
+         * for a line is visited after its line number
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         */
+        private void probe() {
+            this.labels.clear();
+            if (this.pending < 0) {
+                return;
+            }
+            int line = this.pending;
+            this.pending = -1;
+            Integer id = this.ids.get(line);
+            if (id == null) {
+                id = CoverageAgent.register(this.owner.className, this.method, line);
+                if (id < 0) {
+                    CoverageTransformer.this.warnFull();
+                    this.enabled = false;
+                    return;
+                }
+                this.ids.put(line, id);
+            }
+            this.marker(id);
+        }
+
+        private void marker(int id) {
+            super.visitLdcInsn(~id);
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, COVERAGE_UTIL, "marker", "(I)V", false);
+            this.owner.probed = true;
+        }
+
+        /**
+         * Registers a probe for every outcome of the next branch point on the
+         * current line
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param outcomes The number of outcomes of the branch point
+         * @return The probe id of each outcome, or {@code null} if the branch
+         *         point should not be probed
+         */
+        private int[] branch(int outcomes) {
+            if (!this.enabled || this.line < 0) {
+                return null;
+            }
+            int block = this.blocks.merge(this.line, 1, Integer::sum) - 1;
+            int[] back = new int[outcomes];
+            for (int i = 0; i < outcomes; i++) {
+                back[i] = CoverageAgent.registerBranch(this.owner.className, this.method, this.line, block, i);
+                if (back[i] < 0) {
+                    CoverageTransformer.this.warnFull();
+                    this.enabled = false;
+                    return null;
+                }
+            }
+            return back;
+        }
+
+        /**
+         * Redirects a branch target to a new stub which calls a probe and then
+         * jumps to the original target
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param target The original target
+         * @param id The probe id of the outcome
+         * @return The {@link Label} of the stub to branch to instead
+         */
+        private Label stub(Label target, int id) {
+            Stub back = new Stub(target, id);
+            this.stubs.add(back);
+            return back.label;
+        }
+
+        /**
+         * Redirects every distinct target of a switch to a probed stub
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param dflt The default target
+         * @param labels The case targets, which are replaced in place
+         * @return The stub for the default target, or the original if the
+         *         switch is not probed
+         */
+        private Label probeSwitch(Label dflt, Label[] labels) {
+            Map<Label, Integer> outcomes = new LinkedHashMap<>();
+            outcomes.put(dflt, 0);
+            for (Label l : labels) {
+                outcomes.putIfAbsent(l, outcomes.size());
+            }
+            int[] ids = this.branch(outcomes.size());
+            if (ids == null) {
+                return dflt;
+            }
+            Map<Label, Label> stubs = new HashMap<>();
+            outcomes.forEach((l, i) -> stubs.put(l, this.stub(l, ids[i])));
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = stubs.get(labels[i]);
+            }
+            return stubs.get(dflt);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            this.probe();
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            this.probe();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            this.probe();
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            this.probe();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            this.probe();
+            super.visitFieldInsn(opcode, owner, name, desc);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            this.probe();
+            super.visitMethodInsn(opcode, owner, name, desc, itf);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+            this.probe();
+            super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            this.probe();
+            int[] ids = opcode == Opcodes.GOTO || opcode == Opcodes.JSR ? null : this.branch(2);
+            if (ids == null) {
+                super.visitJumpInsn(opcode, label);
+                return;
+            }
+            super.visitJumpInsn(opcode, this.stub(label, ids[0]));
+            this.marker(ids[1]);
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            this.probe();
+            super.visitLdcInsn(cst);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            this.probe();
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            this.probe();
+            Label[] targets = labels.clone();
+            super.visitTableSwitchInsn(min, max, this.probeSwitch(dflt, targets), targets);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            this.probe();
+            Label[] targets = labels.clone();
+            super.visitLookupSwitchInsn(this.probeSwitch(dflt, targets), keys, targets);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            this.probe();
+            super.visitMultiANewArrayInsn(desc, dims);
+        }
+
+        /**
+         * Appends the branch stubs after the last instruction, where they can
+         * only be reached through their branch. A method without any frames
+         * is from a class which needs none, so its stubs get none either
+         * <br><br> {@inheritDoc}
+         *
+         * @since 0.3.2
+         * @version 0.3.2
+         *
+         * @param maxStack {@inheritDoc}
+         * @param maxLocals {@inheritDoc}
+         * @throws IllegalStateException If a branch target has no frame, in
+         *                               which case the class is left as-is
+         */
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            for (Stub stub : this.stubs) {
+                super.visitLabel(stub.label);
+                if (!this.frames.isEmpty()) {
+                    Object[][] frame = this.frames.get(stub.target);
+                    if (frame == null) {
+                        throw new IllegalStateException("No stack map frame at a branch target in " + this.method);
+                    }
+                    super.visitFrame(Opcodes.F_NEW, frame[0].length, frame[0], frame[1].length, frame[1]);
+                }
+                this.marker(stub.id);
+                super.visitJumpInsn(Opcodes.GOTO, stub.target);
+            }
+            super.visitMaxs(maxStack, maxLocals);
+        }
+
+    }
+
+    /**
+     * A jump to a branch target, taken through a probe
+     *
+     * @since 0.3.2
+     * @author 1Rogue
+     * @version 0.3.2
+     */
+    private static final class Stub {
+
+        private final Label label = new Label();
+        private final Label target;
+        private final int id;
+
+        private Stub(Label target, int id) {
+            this.target = target;
+            this.id = id;
+        }
+
+    }
+
+    private synchronized void warnFull() {
+        if (!this.warned) {
+            this.warned = true;
+            System.err.println("[CodelanxLib] Coverage probe limit of " + CoverageAgent.CAPACITY
+                    + " reached, raise it with -Dcodelanxlib.coverage.probes");
+        }
+    }
+
+}
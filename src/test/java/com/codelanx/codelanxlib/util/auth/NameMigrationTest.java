@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link NameMigration} against a local {@link ProfileServer}
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class NameMigrationTest {
+
+    private ProfileServer server;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ProfileServer();
+        this.dir = Files.createTempDirectory("migration").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.close();
+        File[] files = this.dir.listFiles();
+        if (files != null) {
+            Arrays.stream(files).forEach(File::delete);
+        }
+        this.dir.delete();
+    }
+
+    @Test
+    public void testConvertsYaml() throws Exception {
+        this.server.addProfile("YamlAlice");
+        this.server.addProfile("Yaml_Bob");
+        File in = this.write("in.yml",
+                "# balances",
+                "YamlAlice:",
+                "  money: 10",
+                "  homes:",
+                "  - spawn",
+                "# quoted keys",
+                "'Yaml_Bob':",
+                "  money: 20",
+                "YamlNobody:",
+                "  money: 30");
+        File out = new File(this.dir, "out.yml");
+        NameMigration migration = new NameMigration(in, out, NameMigration.Format.YAML).setEndpoint(this.server.getEndpoint());
+        Assert.assertEquals(2, migration.run());
+        Assert.assertEquals(Arrays.asList(
+                "# balances",
+                ProfileServer.idOf("YamlAlice") + ":",
+                "  money: 10",
+                "  homes:",
+                "  - spawn",
+                "# quoted keys",
+                ProfileServer.idOf("Yaml_Bob") + ":",
+                "  money: 20"), this.read(out));
+        Assert.assertEquals(Arrays.asList("YamlNobody:", "  money: 30"), this.read(migration.getUnresolvedFile()));
+        Assert.assertFalse(new File(out.getPath() + ".checkpoint").exists());
+    }
+
+    @Test
+    public void testConvertsFlat() throws Exception {
+        this.server.addProfile("FlatAlice");
+        this.server.addProfile("FlatCarol");
+        File in = this.write("in.txt", "FlatAlice=1", "FlatBob=2", "no separator", "FlatCarol=3=4", "not a name!=5");
+        File out = new File(this.dir, "out.txt");
+        NameMigration migration = new NameMigration(in, out, NameMigration.Format.FLAT)
+                .setEndpoint(this.server.getEndpoint())
+                .setSeparator('=');
+        Assert.assertEquals(2, migration.run());
+        Assert.assertEquals(Arrays.asList(
+                ProfileServer.idOf("FlatAlice") + "=1",
+                "no separator",
+                ProfileServer.idOf("FlatCarol") + "=3=4"), this.read(out));
+        Assert.assertEquals(Arrays.asList("FlatBob=2", "not a name!=5"), this.read(migration.getUnresolvedFile()));
+        Assert.assertEquals(1, this.server.getBulkRequests());
+    }
+
+    @Test
+    public void testResumesAfterFailure() throws Exception {
+        List<String> lines = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String name = "Resume" + i;
+            this.server.addProfile(name);
+            lines.add(name + ": " + i);
+            expected.add(ProfileServer.idOf(name) + ": " + i);
+        }
+        File in = this.write("in.yml", lines.toArray(new String[lines.size()]));
+        File out = new File(this.dir, "out.yml");
+        int[] chunks = new int[1];
+        try {
+            new NameMigration(in, out, NameMigration.Format.YAML)
+                    .setEndpoint(this.server.getEndpoint())
+                    .setChunkSize(10)
+                    .setProgress((processed, total, failed) -> {
+                        if (++chunks[0] == 2) {
+                            this.server.fail(1, 200, "[{\"id\":");
+                        }
+                    })
+                    .run();
+            Assert.fail("Migration should have failed on the third chunk");
+        } catch (IOException ex) {
+            //expected
+        }
+        Assert.assertEquals(2, chunks[0]);
+        Assert.assertEquals(expected.subList(0, 20), this.read(out));
+        int before = this.server.getBulkRequests();
+        Assert.assertEquals(50, new NameMigration(in, out, NameMigration.Format.YAML)
+                .setEndpoint(this.server.getEndpoint())
+                .setChunkSize(10)
+                .run());
+        Assert.assertEquals(3, this.server.getBulkRequests() - before);
+        Assert.assertEquals(expected, this.read(out));
+        Assert.assertFalse(new File(out.getPath() + ".checkpoint").exists());
+    }
+
+    private File write(String name, String... lines) throws IOException {
+        File back = new File(this.dir, name);
+        Files.write(back.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return back;
+    }
+
+    private List<String> read(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+}
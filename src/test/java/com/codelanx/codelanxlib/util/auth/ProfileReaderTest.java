@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import org.json.simple.parser.ParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tests for the streaming JSON tokenizer in {@link ProfileReader}
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class ProfileReaderTest {
+
+    private static final UUID NOTCH = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final UUID JEB = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+
+    @Test
+    public void testReadsArrayOfProfiles() throws IOException, ParseException {
+        Map<String, UUID> read = ProfileReaderTest.read("[{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"},"
+                + "{\"name\":\"jeb_\",\"id\":\"853c80ef3c3749fdaa49938b674adae6\"}]");
+        Assert.assertEquals(2, read.size());
+        Assert.assertEquals(ProfileReaderTest.NOTCH, read.get("Notch"));
+        Assert.assertEquals(ProfileReaderTest.JEB, read.get("jeb_"));
+    }
+
+    @Test
+    public void testReadsSingleProfileWithDashedId() throws IOException, ParseException {
+        Map<String, UUID> read = ProfileReaderTest.read("{\"id\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"name\":\"Notch\"}");
+        Assert.assertEquals(ProfileReaderTest.NOTCH, read.get("Notch"));
+    }
+
+    @Test
+    public void testSkipsUnknownFieldsAndWhitespace() throws IOException, ParseException {
+        Map<String, UUID> read = ProfileReaderTest.read(" [\r\n\t{ \"legacy\" : true , \"demo\":false,\n"
+                + " \"properties\": [{\"name\": \"textures\", \"value\": \"e30=\", \"nested\": {\"a\": [1, -2.5E3, null]}}],\n"
+                + " \"id\" : \"069a79f444e94726a5befca90e38aaf5\" , \"name\" : \"Notch\" , \"extra\": {} } , [] , \"junk\" ] ");
+        Assert.assertEquals(1, read.size());
+        Assert.assertEquals(ProfileReaderTest.NOTCH, read.get("Notch"));
+    }
+
+    @Test
+    public void testDecodesEscapes() throws IOException, ParseException {
+        Map<String, UUID> read = ProfileReaderTest.read("[{\"name\":\"a\\\"b\\\\c\\/d\\u00e9\\n\",\"id\":\"069a79f444e94726a5befca90e38aaf5\"}]");
+        Assert.assertEquals(ProfileReaderTest.NOTCH, read.get("a\"b\\c/dé\n"));
+    }
+
+    @Test
+    public void testIgnoresIncompleteProfiles() throws IOException, ParseException {
+        Assert.assertTrue(ProfileReaderTest.read("[{\"name\":\"Notch\"},{\"id\":\"069a79f444e94726a5befca90e38aaf5\"},{}]").isEmpty());
+    }
+
+    @Test
+    public void testEmptyResponses() throws IOException, ParseException {
+        Assert.assertTrue(ProfileReaderTest.read("").isEmpty());
+        Assert.assertTrue(ProfileReaderTest.read("[]").isEmpty());
+        Assert.assertTrue(ProfileReaderTest.read(" [ ] ").isEmpty());
+    }
+
+    @Test
+    public void testReadsAcrossBufferBoundaries() throws IOException, ParseException {
+        StringBuilder json = new StringBuilder("[");
+        Map<String, UUID> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            UUID id = UUID.nameUUIDFromBytes(new byte[]{(byte) i, (byte) (i >> 8)});
+            expected.put("Player" + i, id);
+            if (i > 0) {
+                json.append(",\n  ");
+            }
+            json.append("{\"id\":\"").append(id.toString().replace("-", "")).append("\",\"name\":\"Player").append(i).append("\"}");
+        }
+        Assert.assertEquals(expected, ProfileReaderTest.read(json.append(']').toString()));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testRejectsTruncatedResponse() throws IOException, ParseException {
+        ProfileReaderTest.read("[{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"No");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testRejectsMissingSeparator() throws IOException, ParseException {
+        ProfileReaderTest.read("[{\"id\":\"069a79f444e94726a5befca90e38aaf5\" \"name\":\"Notch\"}]");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testRejectsInvalidId() throws IOException, ParseException {
+        ProfileReaderTest.read("{\"id\":\"not-a-uuid\",\"name\":\"Notch\"}");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testRejectsNonJson() throws IOException, ParseException {
+        ProfileReaderTest.read("<html>Too Many Requests</html>");
+    }
+
+    private static Map<String, UUID> read(String json) throws IOException, ParseException {
+        Map<String, UUID> back = new LinkedHashMap<>();
+        new ProfileReader(new StringReader(json)).read(back::put);
+        return back;
+    }
+
+}
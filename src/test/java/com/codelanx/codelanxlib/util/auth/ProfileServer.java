@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for Mojang's profile API, serving both the bulk
+ * {@code /profiles/minecraft} endpoint and the single
+ * {@code /users/profiles/minecraft/<name>} endpoint from an in-memory set of
+ * profiles. Responses can be gzipped, and failures can be injected to test
+ * retries and error handling
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+final class ProfileServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, UserInfo> profiles = new ConcurrentHashMap<>();
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger bulkRequests = new AtomicInteger();
+    private final AtomicInteger singleRequests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureCode = 500;
+    private volatile String failureBody = "";
+    private volatile boolean gzip;
+    private volatile long delay;
+
+    /**
+     * Starts a server on a free local port
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @throws IOException If the server could not be started
+     */
+    public ProfileServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/profiles/minecraft", this::bulk);
+        this.server.createContext("/users/profiles/minecraft/", this::single);
+        this.server.start();
+    }
+
+    /**
+     * Returns the root URL of this server, for
+     * {@link UUIDFetcher#setEndpoint(String)}
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The endpoint of this server
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    /**
+     * Adds a profile with a {@link UUID} derived from its name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The name of the profile
+     * @return The {@link UUID} of the profile
+     */
+    public UUID addProfile(String name) {
+        UUID id = ProfileServer.idOf(name);
+        this.profiles.put(name.toLowerCase(Locale.ENGLISH), new UserInfo(name, id));
+        return id;
+    }
+
+    /**
+     * Makes the next requests fail with the given response
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param count The number of requests to fail
+     * @param code The HTTP status code to respond with
+     * @param body The response body
+     */
+    public void fail(int count, int code, String body) {
+        this.failureCode = code;
+        this.failureBody = body;
+        this.failures.set(count);
+    }
+
+    /**
+     * Sets whether responses are gzipped
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param gzip {@code true} to gzip responses
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Sets how long the single profile endpoint waits before responding
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param delay The delay in milliseconds
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Returns the number of requests made to the bulk endpoint
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of bulk requests
+     */
+    public int getBulkRequests() {
+        return this.bulkRequests.get();
+    }
+
+    /**
+     * Returns the number of requests made to the single profile endpoint
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of single profile requests
+     */
+    public int getSingleRequests() {
+        return this.singleRequests.get();
+    }
+
+    /**
+     * Returns the number of distinct client connections served so far
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @return The number of connections
+     */
+    public int getConnections() {
+        return this.connections.size();
+    }
+
+    /**
+     * Returns the {@link UUID} the server assigns to a name
+     *
+     * @since 0.3.2
+     * @version 0.3.2
+     *
+     * @param name The player name, in any case
+     * @return The {@link UUID} for the name
+     */
+    public static UUID idOf(String name) {
+        return UUID.nameUUIDFromBytes(name.toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    private void bulk(HttpExchange ex) throws IOException {
+        this.bulkRequests.incrementAndGet();
+        String body = new String(ProfileServer.readAll(ex.getRequestBody()), StandardCharsets.UTF_8).trim();
+        if (this.failed(ex)) {
+            return;
+        }
+        StringBuilder out = new StringBuilder("[");
+        for (String quoted : body.substring(1, body.length() - 1).split(",")) {
+            String name = quoted.trim();
+            UserInfo info = this.profiles.get(name.substring(1, name.length() - 1).toLowerCase(Locale.ENGLISH));
+            if (info != null) {
+                if (out.length() > 1) {
+                    out.append(',');
+                }
+                ProfileServer.appendProfile(out, info);
+            }
+        }
+        this.respond(ex, 200, out.append(']').toString());
+    }
+
+    private void single(HttpExchange ex) throws IOException {
+        this.singleRequests.incrementAndGet();
+        ProfileServer.readAll(ex.getRequestBody());
+        if (this.delay > 0) {
+            try {
+                Thread.sleep(this.delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.failed(ex)) {
+            return;
+        }
+        String path = ex.getRequestURI().getPath();
+        UserInfo info = this.profiles.get(path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ENGLISH));
+        if (info == null) {
+            this.respond(ex, 204, null);
+        } else {
+            this.respond(ex, 200, ProfileServer.appendProfile(new StringBuilder(), info).toString());
+        }
+    }
+
+    private boolean failed(HttpExchange ex) throws IOException {
+        this.connections.add(ex.getRemoteAddress().getPort());
+        if (this.failures.getAndUpdate(i -> Math.max(0, i - 1)) <= 0) {
+            return false;
+        }
+        if (this.failureCode == 429) {
+            ex.getResponseHeaders().set("Retry-After", "0");
+        }
+        this.respond(ex, this.failureCode, this.failureBody);
+        return true;
+    }
+
+    private void respond(HttpExchange ex, int code, String body) throws IOException {
+        if (body == null || body.isEmpty()) {
+            ex.sendResponseHeaders(code, -1);
+            ex.close();
+            return;
+        }
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        if (this.gzip) {
+            ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream gz = new GZIPOutputStream(zipped)) {
+                gz.write(data);
+            }
+            data = zipped.toByteArray();
+            ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, data.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    private static StringBuilder appendProfile(StringBuilder out, UserInfo info) {
+        return out.append("{\"id\":\"").append(info.getUUID().toString().replace("-", ""))
+                .append("\",\"name\":\"").append(info.getName()).append("\"}");
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream back = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            back.write(buffer, 0, read);
+        }
+        return back.toByteArray();
+    }
+
+}
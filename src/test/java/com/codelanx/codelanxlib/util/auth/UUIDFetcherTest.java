@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2016 Codelanx, All Rights Reserved
+ *
+ * This work is licensed under a Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License.
+ *
+ * This program is protected software: You are free to distrubute your
+ * own use of this software under the terms of the Creative Commons BY-NC-ND
+ * license as published by Creative Commons in the year 2015 or as published
+ * by a later date. You may not provide the source files or provide a means
+ * of running the software outside of those licensed to use it.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the Creative Commons BY-NC-ND license
+ * long with this program. If not, see <https://creativecommons.org/licenses/>.
+ */
+package com.codelanx.codelanxlib.util.auth;
+
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Tests {@link UUIDFetcher} against a local {@link ProfileServer}
+ *
+ * @since 0.3.2
+ * @author 1Rogue
+ * @version 0.3.2
+ */
+public class UUIDFetcherTest {
+
+    private ProfileServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ProfileServer();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.close();
+    }
+
+    @Test
+    public void testResolvesNamesInBatches() throws Exception {
+        List<String> names = this.names("Batch", 250, 10);
+        Map<String, UUID> found = this.fetcher(names).call();
+        Assert.assertEquals(3, this.server.getBulkRequests());
+        Assert.assertEquals(this.expected(names, 10), found);
+    }
+
+    @Test
+    public void testDecodesGzippedResponses() throws Exception {
+        this.server.setGzip(true);
+        List<String> names = this.names("Gzip", 120, 7);
+        Assert.assertEquals(this.expected(names, 7), this.fetcher(names).call());
+    }
+
+    @Test
+    public void testReusesConnections() throws Exception {
+        List<String> names = this.names("Reuse", 500, 0);
+        Assert.assertEquals(500, this.fetcher(names).setConcurrency(1).call().size());
+        Assert.assertEquals(5, this.server.getBulkRequests());
+        Assert.assertEquals(1, this.server.getConnections());
+    }
+
+    @Test
+    public void testRetriesServerErrors() throws Exception {
+        this.server.fail(1, 500, "Internal error");
+        List<String> names = this.names("Retry", 50, 0);
+        Assert.assertEquals(this.expected(names, 0), this.fetcher(names).call());
+        Assert.assertEquals(2, this.server.getBulkRequests());
+    }
+
+    @Test
+    public void testRetriesAfterRateLimit() throws Exception {
+        this.server.fail(2, 429, "{\"error\":\"TooManyRequestsException\"}");
+        List<String> names = this.names("Limit", 50, 0);
+        UUIDFetcher fetcher = new UUIDFetcher(names, true)
+                .setEndpoint(this.server.getEndpoint())
+                .setRateLimiter(new RateLimiter(100, 100));
+        Assert.assertEquals(this.expected(names, 0), fetcher.call());
+        Assert.assertEquals(3, this.server.getBulkRequests());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testFailsOnMalformedResponse() throws Exception {
+        this.server.fail(1, 200, "[{\"id\":\"069a79f4");
+        this.fetcher(this.names("Malformed", 10, 0)).call();
+    }
+
+    @Test
+    public void testLeavesSharedExecutorRunning() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<String> names = this.names("Shared", 300, 3);
+            Assert.assertEquals(this.expected(names, 3), this.fetcher(names).setExecutor(pool).call());
+            Assert.assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStreamsOldNames() throws Exception {
+        List<String> names = this.names("Old", 30, 4);
+        Map<String, UserInfo> found = new HashMap<>();
+        int[] progress = new int[3];
+        try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(names)
+                .streamFromOldNames((processed, total, failed) -> {
+                    progress[0] = processed;
+                    progress[1] = total;
+                    progress[2] = failed;
+                })) {
+            stream.forEach(ent -> found.put(ent.getKey(), ent.getValue()));
+        }
+        Assert.assertEquals(30, found.size());
+        Assert.assertEquals(30, this.server.getSingleRequests());
+        Map<String, UUID> expected = this.expected(names, 4);
+        found.forEach((name, info) -> {
+            if (expected.containsKey(name)) {
+                Assert.assertEquals(expected.get(name), info.getUUID());
+            } else {
+                Assert.assertNull(info);
+            }
+        });
+        Assert.assertEquals(30, progress[0]);
+        Assert.assertEquals(30, progress[1]);
+        Assert.assertEquals(30 - expected.size(), progress[2]);
+    }
+
+    @Test
+    public void testOldNameStreamResumesFromCheckpoint() throws Exception {
+        File checkpoint = Files.createTempFile("uuids", ".checkpoint").toFile();
+        Assert.assertTrue(checkpoint.delete());
+        try {
+            List<String> names = this.names("Resume", 30, 5);
+            this.server.setDelay(20);
+            try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(names).setConcurrency(1)
+                    .setCheckpoint(checkpoint).streamFromOldNames(null)) {
+                Iterator<Map.Entry<String, UserInfo>> itr = stream.iterator();
+                for (int i = 0; i < 5; i++) {
+                    itr.next();
+                }
+            }
+            int first = this.server.getSingleRequests();
+            Assert.assertTrue(checkpoint.exists());
+            this.server.setDelay(0);
+            Map<String, UserInfo> found = new HashMap<>();
+            try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(names).setCheckpoint(checkpoint).streamFromOldNames(null)) {
+                stream.forEach(ent -> found.put(ent.getKey(), ent.getValue()));
+            }
+            Assert.assertEquals(30, found.size());
+            Assert.assertTrue(this.server.getSingleRequests() - first < 30);
+            Assert.assertEquals(this.expected(names, 5).get("Resume1"), found.get("Resume1").getUUID());
+            Assert.assertNull(found.get("Resume0"));
+            Assert.assertFalse(checkpoint.exists());
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testOldNameStreamResumesWithDuplicateNames() throws Exception {
+        File checkpoint = Files.createTempFile("uuids", ".checkpoint").toFile();
+        Assert.assertTrue(checkpoint.delete());
+        try {
+            List<String> names = this.names("Dupe", 10, 0);
+            names.add(1, "Dupe0");
+            names.add("Dupe1");
+            this.server.setDelay(20);
+            try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(names).setConcurrency(1)
+                    .setCheckpoint(checkpoint).streamFromOldNames(null)) {
+                Iterator<Map.Entry<String, UserInfo>> itr = stream.iterator();
+                for (int i = 0; i < 4; i++) {
+                    itr.next();
+                }
+            }
+            this.server.setDelay(0);
+            List<String> found = new ArrayList<>();
+            try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(names).setCheckpoint(checkpoint).streamFromOldNames(null)) {
+                stream.forEach(ent -> found.add(ent.getKey()));
+            }
+            found.sort(null);
+            List<String> expected = new ArrayList<>(names);
+            expected.sort(null);
+            Assert.assertEquals(expected, found);
+            Assert.assertFalse(checkpoint.exists());
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    @Test
+    public void testOldNameStreamUsesSharedExecutor() throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2, r -> {
+            threads.incrementAndGet();
+            return new Thread(r);
+        });
+        try {
+            List<String> names = this.names("SharedOld", 20, 0);
+            long count;
+            try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(names).setExecutor(pool).streamFromOldNames(null)) {
+                count = stream.count();
+            }
+            Assert.assertEquals(20, count);
+            Assert.assertTrue(threads.get() > 0);
+            Assert.assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOldNameStreamFailsOnMalformedResponse() throws Exception {
+        this.server.fail(1, 200, "{\"id\":");
+        try (Stream<Map.Entry<String, UserInfo>> stream = this.fetcher(this.names("Broken", 5, 0))
+                .setConcurrency(1).streamFromOldNames(null)) {
+            stream.forEach(ent -> {});
+            Assert.fail("Stream should have failed");
+        } catch (CompletionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof ParseException);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testOldNameStreamFailsWhenInterrupted() throws Exception {
+        List<String> names = this.names("Interrupt", 2, 0);
+        UUIDFetcher fetcher = new UUIDFetcher(names, true)
+                .setEndpoint(this.server.getEndpoint())
+                .setConcurrency(1)
+                .setRateLimiter(new RateLimiter(0.01, 1));
+        try (Stream<Map.Entry<String, UserInfo>> stream = fetcher.streamFromOldNames(null)) {
+            Iterator<Map.Entry<String, UserInfo>> itr = stream.iterator();
+            itr.next();
+            //the worker is now waiting on the limiter for the second name
+            Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().equals("UUIDFetcher"))
+                    .forEach(Thread::interrupt);
+            try {
+                itr.next();
+                Assert.fail("Stream should have failed");
+            } catch (CompletionException ex) {
+                Assert.assertTrue(ex.getCause() instanceof InterruptedException);
+            }
+        }
+    }
+
+    /**
+     * Creates a list of player names, adding all but some to the server
+     *
+     * @param prefix The prefix of each name
+     * @param count The number of names
+     * @param unknownEvery Leaves every nth name off the server, or none if 0
+     * @return The names
+     */
+    private List<String> names(String prefix, int count, int unknownEvery) {
+        List<String> back = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = prefix + i;
+            back.add(name);
+            if (unknownEvery == 0 || i % unknownEvery != 0) {
+                this.server.addProfile(name);
+            }
+        }
+        return back;
+    }
+
+    private Map<String, UUID> expected(List<String> names, int unknownEvery) {
+        Map<String, UUID> back = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (unknownEvery == 0 || i % unknownEvery != 0) {
+                back.put(names.get(i), ProfileServer.idOf(names.get(i)));
+            }
+        }
+        return back;
+    }
+
+    private UUIDFetcher fetcher(List<String> names) {
+        return new UUIDFetcher(names, false).setEndpoint(this.server.getEndpoint());
+    }
+
+}